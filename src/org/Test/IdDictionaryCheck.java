@@ -0,0 +1,51 @@
+package org.Test;
+
+import org.utils.IdDictionary;
+
+/**
+ * Check that ids are interned past the initial capacity of a dictionary, with both constructors. Throws
+ * IllegalStateException if a check fails.
+ * @author tndoan
+ *
+ */
+public class IdDictionaryCheck {
+
+	public static void main(String[] args) {
+		int n = 1000;
+
+		check(new IdDictionary(), 0, n);
+
+		String[] initial = new String[20];
+		for (int i = 0; i < initial.length; i++)
+			initial[i] = "id" + i;
+		check(new IdDictionary(initial), initial.length, n);
+
+		System.out.println("IdDictionary: ok");
+	}
+
+	/**
+	 * intern ids first .. n - 1, then check their indices and canonical Strings
+	 * @param dict	dictionary which holds ids 0 .. first - 1
+	 * @param first
+	 * @param n
+	 */
+	private static void check(IdDictionary dict, int first, int n) {
+		String[] canonical = new String[n];
+		for (int i = 0; i < first; i++)
+			canonical[i] = dict.get(i);
+		for (int i = first; i < n; i++) {
+			String id = new String("id" + i);
+			String s = dict.intern(id);
+			if (s != id)
+				throw new IllegalStateException("new id is not its own canonical String: " + id);
+			canonical[i] = s;
+		}
+		if (dict.size() != n)
+			throw new IllegalStateException("size " + dict.size() + " instead of " + n);
+		for (int i = 0; i < n; i++) {
+			String id = new String("id" + i);
+			if (dict.intern(id) != canonical[i] || dict.getOrAdd(id) != i || dict.get(i) != canonical[i])
+				throw new IllegalStateException("wrong index or canonical String of id" + i);
+		}
+	}
+}
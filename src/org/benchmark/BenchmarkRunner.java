@@ -0,0 +1,238 @@
+package org.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+
+/**
+ * Runs a benchmark operation in a number of threads for fixed time slots and reports throughput, allocated bytes per
+ * operation and garbage collections, in the spirit of JMH throughput mode with the gc profiler.
+ *
+ * Every slot is warmup or measurement. In a slot each thread calls the operation until the slot ends; results of the
+ * operation are summed into a sink so that the JIT cannot remove the work. Allocated bytes are counted for the calling
+ * threads and for every other live thread of the JVM, so allocations of worker pools used by the operation are included.
+ * Standard output is muted while operations run because some of them print progress.
+ * @author tndoan
+ *
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * work of one benchmark
+	 */
+	public interface Operation {
+		/**
+		 *
+		 * @param thread	index of calling thread, in [0, # of threads)
+		 * @param i			number of calls done by this thread so far
+		 * @return			any result of the work
+		 */
+		double run(int thread, long i) throws Exception;
+	}
+
+	/**
+	 * measured numbers of one benchmark with one number of threads
+	 */
+	public static class Result {
+		public final String name;
+		public final int threads;
+		public final double opsPerSec;
+		public final double opsPerSecError;
+		public final double bytesPerOp;
+		public final long gcCount;
+		public final long gcTimeMs;
+
+		Result(String name, int threads, double opsPerSec, double opsPerSecError, double bytesPerOp, long gcCount,
+				long gcTimeMs) {
+			this.name = name;
+			this.threads = threads;
+			this.opsPerSec = opsPerSec;
+			this.opsPerSecError = opsPerSecError;
+			this.bytesPerOp = bytesPerOp;
+			this.gcCount = gcCount;
+			this.gcTimeMs = gcTimeMs;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-24s %3d %14.3f +- %-12.3f %14.1f %6d %8d", name, threads, opsPerSec, opsPerSecError,
+					bytesPerOp, gcCount, gcTimeMs);
+		}
+
+		public static String header() {
+			return String.format("%-24s %3s %14s    %-12s %14s %6s %8s", "benchmark", "thr", "ops/s", "error", "B/op",
+					"gc", "gc ms");
+		}
+	}
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private final int warmupIterations;
+	private final int measureIterations;
+	private final long slotNanos;
+
+	private volatile double sink;
+
+	/**
+	 * bytes allocated by workers of slots since the beginning of measurement
+	 */
+	private long workerBytes;
+
+	/**
+	 *
+	 * @param warmupIterations	number of warmup slots
+	 * @param measureIterations	number of measured slots
+	 * @param slotMillis		length of one slot in milliseconds
+	 */
+	public BenchmarkRunner(int warmupIterations, int measureIterations, long slotMillis) {
+		this.warmupIterations = warmupIterations;
+		this.measureIterations = measureIterations;
+		this.slotNanos = slotMillis * 1000000L;
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param threads	number of threads calling the operation at the same time
+	 * @param op
+	 * @return
+	 * @throws Exception	first exception thrown by the operation
+	 */
+	public Result run(String name, int threads, Operation op) throws Exception {
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		try {
+			long[] calls = new long[threads];
+			for (int i = 0; i < warmupIterations; i++)
+				runSlot(threads, op, calls);
+
+			double[] opsPerSec = new double[measureIterations];
+			long totalOps = 0;
+			HashMap<Long, Long> allocated = allocatedBytes();
+			long gcCount = gcCount();
+			long gcTime = gcTimeMs();
+			workerBytes = 0;
+			for (int i = 0; i < measureIterations; i++) {
+				long start = System.nanoTime();
+				long ops = runSlot(threads, op, calls);
+				opsPerSec[i] = ops * 1e9 / (System.nanoTime() - start);
+				totalOps += ops;
+			}
+			// workers of each slot are not alive anymore, so they count their own bytes
+			long bytes = allocatedSince(allocated) + workerBytes;
+			gcCount = gcCount() - gcCount;
+			gcTime = gcTimeMs() - gcTime;
+
+			double mean = 0.0;
+			for (double x : opsPerSec)
+				mean += x;
+			mean /= measureIterations;
+			double var = 0.0;
+			for (double x : opsPerSec)
+				var += (x - mean) * (x - mean);
+			double error = measureIterations > 1 ? Math.sqrt(var / (measureIterations - 1)) : 0.0;
+
+			return new Result(name, threads, mean, error, (double) bytes / Math.max(totalOps, 1), gcCount, gcTime);
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	/**
+	 *
+	 * @return	sum of results of all calls, only to keep results alive
+	 */
+	public double getSink() {
+		return sink;
+	}
+
+	/**
+	 * every thread calls the operation at least once and until the slot is over
+	 * @param threads
+	 * @param op
+	 * @param calls		number of calls done by each thread; updated
+	 * @return			number of calls in this slot
+	 */
+	private long runSlot(int threads, Operation op, long[] calls) throws Exception {
+		long deadline = System.nanoTime() + slotNanos;
+		long[] ops = new long[threads];
+		double[] results = new double[threads];
+		long[] bytes = new long[threads];
+		Exception[] errors = new Exception[threads];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			workers[t] = new Thread(() -> {
+				try {
+					long id = Thread.currentThread().getId();
+					long allocated = THREADS.getThreadAllocatedBytes(id);
+					long i = calls[thread];
+					double r = 0.0;
+					do {
+						r += op.run(thread, i++);
+					} while (System.nanoTime() < deadline);
+					ops[thread] = i - calls[thread];
+					calls[thread] = i;
+					results[thread] = r;
+					bytes[thread] = THREADS.getThreadAllocatedBytes(id) - allocated;
+				} catch (Exception e) {
+					errors[thread] = e;
+				}
+			}, "benchmark-" + t);
+			workers[t].start();
+		}
+		long total = 0;
+		for (int t = 0; t < threads; t++) {
+			workers[t].join();
+			if (errors[t] != null)
+				throw errors[t];
+			total += ops[t];
+			workerBytes += bytes[t];
+			sink += results[t];
+		}
+		return total;
+	}
+
+	private static HashMap<Long, Long> allocatedBytes() {
+		HashMap<Long, Long> result = new HashMap<>();
+		long[] ids = THREADS.getAllThreadIds();
+		long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+		for (int i = 0; i < ids.length; i++)
+			result.put(ids[i], bytes[i]);
+		return result;
+	}
+
+	/**
+	 *
+	 * @param before	allocated bytes of threads at the beginning
+	 * @return			bytes allocated since then by threads which are alive now (e.g. threads of pools)
+	 */
+	private static long allocatedSince(HashMap<Long, Long> before) {
+		long result = 0;
+		HashMap<Long, Long> now = allocatedBytes();
+		for (Long id : now.keySet())
+			result += now.get(id) - before.getOrDefault(id, 0L);
+		return result;
+	}
+
+	private static long gcCount() {
+		long result = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			result += Math.max(gc.getCollectionCount(), 0);
+		return result;
+	}
+
+	private static long gcTimeMs() {
+		long result = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			result += Math.max(gc.getCollectionTime(), 0);
+		return result;
+	}
+}
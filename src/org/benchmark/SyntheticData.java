@@ -0,0 +1,164 @@
+package org.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+import org.object.AreaObject;
+import org.object.PointObject;
+import org.object.UserObject;
+import org.object.VenueObject;
+import org.utils.Utils;
+
+/**
+ * Synthetic data set in the same shape as Evaluation.createSyntheticData: venues are uniform in a rectangle, each user checks in
+ * at random venues and a part of users do not have known home location. The data only depends on size and seed, so
+ * every run of a benchmark sees the same data.
+ * @author tndoan
+ *
+ */
+public class SyntheticData {
+
+	/**
+	 * predefined sizes: number of users, number of venues, number of check-in records per user and size of the
+	 * rectangle in degree
+	 */
+	public static final int SMALL = 1;
+	public static final int MEDIUM = 2;
+	public static final int LARGE = 3;
+	public static final int CITY = 4;
+
+	private static final double MIN_LAT = 1.272307;
+	private static final double MIN_LNG = 103.818895;
+
+	public final int numUsers;
+	public final int numVenues;
+	public final int cksPerUser;
+
+	/**
+	 * size of the rectangle in degree
+	 */
+	public final double extent;
+
+	/**
+	 * size of the cell of area in degree
+	 */
+	public final double scale;
+
+	public final HashMap<String, PointObject> venueLoc = new HashMap<>();
+	public final HashMap<String, HashMap<String, Integer>> cksMap = new HashMap<>();
+	public final HashMap<String, UserObject> userMap = new HashMap<>();
+	public final HashMap<String, VenueObject> venueMap;
+	public final HashMap<String, AreaObject> areaMap = new HashMap<>();
+	public final Set<String> unknownLocUsers = new HashSet<>();
+
+	/**
+	 *
+	 * @param size	one of {@link #SMALL}, {@link #MEDIUM}, {@link #LARGE}, {@link #CITY}
+	 * @param seed
+	 */
+	public SyntheticData(int size, long seed) {
+		this(numUsers(size), numVenues(size), size == SMALL ? 10 : 20, size >= LARGE ? 0.3 : 0.04, 0.01, seed);
+	}
+
+	/**
+	 *
+	 * @param numUsers
+	 * @param numVenues
+	 * @param cksPerUser	number of check-in records of each user (records at the same venue are merged)
+	 * @param extent		size of the rectangle in degree
+	 * @param scale			size of the cell of area in degree
+	 * @param seed
+	 */
+	public SyntheticData(int numUsers, int numVenues, int cksPerUser, double extent, double scale, long seed) {
+		this.numUsers = numUsers;
+		this.numVenues = numVenues;
+		this.cksPerUser = cksPerUser;
+		this.extent = extent;
+		this.scale = scale;
+		Random r = new Random(seed);
+
+		for (int i = 0; i < numVenues; i++)
+			venueLoc.put("v" + i, new PointObject(MIN_LAT + extent * r.nextDouble(), MIN_LNG + extent * r.nextDouble()));
+
+		for (int i = 0; i < numUsers; i++) {
+			HashMap<String, Integer> checkinMap = new HashMap<>();
+			for (int k = 0; k < cksPerUser; k++)
+				checkinMap.merge("v" + r.nextInt(numVenues), 1 + r.nextInt(5), Integer::sum);
+			cksMap.put("u" + i, checkinMap);
+		}
+
+		venueMap = Utils.createNeighborsBox(venueLoc, areaMap, Utils.countCks(cksMap), Utils.collectUsers(cksMap), scale, true);
+
+		for (int i = 0; i < numUsers; i++) {
+			String uId = "u" + i;
+			HashMap<String, Integer> checkinMap = cksMap.get(uId);
+			boolean isKnownHome = r.nextDouble() > 0.3;
+			userMap.put(uId, new UserObject(uId, Utils.calculateCenterOfMass(checkinMap, venueLoc), isKnownHome, checkinMap));
+			if (!isKnownHome)
+				unknownLocUsers.add(uId);
+		}
+
+		for (int i = 0; i < numVenues; i++) {
+			VenueObject vo = venueMap.get("v" + i);
+			if (vo != null)
+				vo.updateInfluenceScope(0.5 + r.nextDouble());
+		}
+	}
+
+	/**
+	 *
+	 * @return	ids of venues which have at least one neighbor, in a fixed order
+	 */
+	public ArrayList<String> venuesWithNeighbors() {
+		ArrayList<String> result = new ArrayList<>();
+		for (int i = 0; i < numVenues; i++) {
+			VenueObject vo = venueMap.get("v" + i);
+			if (vo != null && vo.getNeighbors() != null && !vo.getNeighbors().isEmpty() && vo.getUserIds() != null
+					&& !vo.getUserIds().isEmpty())
+				result.add(vo.getId());
+		}
+		return result;
+	}
+
+	/**
+	 * write check-ins in the format of {@link org.utils.ReadFile#readNumCksFile(String)}
+	 * @param fname
+	 * @throws IOException
+	 */
+	public void writeCheckinFile(String fname) throws IOException {
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(fname))) {
+			for (Entry<String, HashMap<String, Integer>> user : cksMap.entrySet()) {
+				StringBuilder sb = new StringBuilder(user.getKey());
+				for (Entry<String, Integer> ck : user.getValue().entrySet())
+					sb.append(' ').append(ck.getKey()).append(':').append(ck.getValue());
+				bw.write(sb.toString());
+				bw.newLine();
+			}
+		}
+	}
+
+	private static int numUsers(int size) {
+		switch (size) {
+		case SMALL: return 1000;
+		case MEDIUM: return 20000;
+		case LARGE: return 200000;
+		default: return 1000000;
+		}
+	}
+
+	private static int numVenues(int size) {
+		switch (size) {
+		case SMALL: return 500;
+		case MEDIUM: return 5000;
+		case LARGE: return 30000;
+		default: return 100000;
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package org.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.model.Loglikelihood;
+import org.model.ModeModel;
+import org.model.Model;
+import org.model.ModelCore;
+import org.object.AreaObject;
+import org.object.PointObject;
+import org.object.VenueObject;
+import org.utils.CheckinFileParser;
+import org.utils.LocalProjection;
+import org.utils.NeighborPolicy;
+import org.utils.QuadtreeAreaMap;
+import org.utils.ReadFile;
+import org.utils.Utils;
+
+/**
+ * Benchmarks of the hot paths of training on {@link SyntheticData}. Usage:
+ *
+ * TrainingBenchmark [size=small|medium|large|city] [threads=1,2,4] [warmup=3] [iterations=5] [time=1000] [filter=llh] [seed=1]
+ *
+ * time is the length of one iteration in milliseconds; only benchmarks whose name contains filter are run. Every
+ * benchmark is run with each number of threads except the ones which change the model, they always use 1 thread.
+ * @author tndoan
+ *
+ */
+public class TrainingBenchmark {
+
+	/**
+	 * the map version of log likelihood of the whole data visits every pair of user and venue, so it is skipped if
+	 * there are more pairs than this
+	 */
+	private static final long MAX_DENSE_PAIRS = 50000000L;
+
+	private static final int CHECKIN_MODE = 1;
+
+	private final SyntheticData data;
+	private final boolean isSigmoid;
+	private final int modeModel = ModeModel.COMBINED;
+	private final Model model;
+	private final ModelCore core;
+
+	/**
+	 * venues which are optimized by the benchmarks of one venue, and their indices in the core
+	 */
+	private final ArrayList<String> venueIds;
+	private final int[] venues;
+
+	/**
+	 * input of Model.grad for each venue in venueIds
+	 */
+	private final ArrayList<HashMap<String, Double>> areaSurroundings = new ArrayList<>();
+
+	private final String cksFile;
+
+	public TrainingBenchmark(SyntheticData data, boolean isSigmoid) throws Exception {
+		this.data = data;
+		this.isSigmoid = isSigmoid;
+		this.model = new Model(data.userMap, data.venueMap, data.areaMap, data.unknownLocUsers, isSigmoid, modeModel);
+		this.core = new ModelCore(data.userMap, data.venueMap, data.areaMap, data.unknownLocUsers);
+
+		venueIds = data.venuesWithNeighbors();
+		venues = new int[venueIds.size()];
+		for (int i = 0; i < venues.length; i++) {
+			String vId = venueIds.get(i);
+			venues[i] = core.getVenueIndex(vId);
+			VenueObject vo = data.venueMap.get(vId);
+			double sqScope = vo.getInfluenceScope() * vo.getInfluenceScope();
+			HashMap<String, Double> areaSurrounding = new HashMap<>();
+			areaSurrounding.put(vId, sqAreaScope(vo) - sqScope);
+			for (String nId : vo.getNeighbors())
+				areaSurrounding.put(nId, sqAreaScope(data.venueMap.get(nId)) - sqScope);
+			areaSurroundings.add(areaSurrounding);
+		}
+
+		File f = File.createTempFile("checkins", ".txt");
+		f.deleteOnExit();
+		data.writeCheckinFile(f.getPath());
+		cksFile = f.getPath();
+	}
+
+	private double sqAreaScope(VenueObject vo) {
+		AreaObject ao = data.areaMap.get(vo.getAreaId());
+		return ao.getScope() * ao.getScope();
+	}
+
+	/**
+	 * run all benchmarks whose name contains filter
+	 * @param runner
+	 * @param threads	numbers of threads
+	 * @param filter
+	 * @throws Exception
+	 */
+	public void runAll(BenchmarkRunner runner, int[] threads, String filter) throws Exception {
+		System.out.println(BenchmarkRunner.Result.header());
+
+		run(runner, threads, filter, "llh.all", false,
+				(t, i) -> Loglikelihood.calculateLLH(core, isSigmoid, modeModel));
+		if ((long) data.numUsers * data.numVenues <= MAX_DENSE_PAIRS)
+			run(runner, threads, filter, "llh.all.map", false,
+					(t, i) -> Loglikelihood.calculateLLH(data.userMap, data.venueMap, data.areaMap, isSigmoid, modeModel));
+		run(runner, threads, filter, "llh.venue", false, (t, i) -> {
+			int k = (int) (i % venues.length);
+			return Loglikelihood.calculateLLH(core, isSigmoid, venues[k], 1.0, modeModel);
+		});
+		run(runner, threads, filter, "llh.venue.map", false, (t, i) -> {
+			int k = (int) (i % venues.length);
+			return Loglikelihood.calculateLLH(data.userMap, data.venueMap, data.areaMap, isSigmoid, venueIds.get(k), 1.0,
+					modeModel);
+		});
+		run(runner, threads, filter, "grad", false, (t, i) -> {
+			int k = (int) (i % venues.length);
+			return model.grad(venueIds.get(k), 1.0, areaSurroundings.get(k), 1.0, CHECKIN_MODE);
+		});
+		run(runner, threads, filter, "maximizeScopeOfVenue", false, (t, i) -> {
+			int k = (int) (i % venues.length);
+			return model.maximizeScopeOfVenue(venueIds.get(k), 1.0, CHECKIN_MODE);
+		});
+		run(runner, threads, filter, "updateLocOfUsers", true, (t, i) -> {
+			model.updateLocOfUsers(CHECKIN_MODE);
+			return 0.0;
+		});
+		run(runner, threads, filter, "createNeighborsBox", false, (t, i) -> Utils.createNeighborsBox(data.venueLoc,
+				new HashMap<>(), Utils.countCks(data.cksMap), Utils.collectUsers(data.cksMap), data.scale, true).size());
+		run(runner, threads, filter, "createNeighborsBox.parallel", false, (t, i) -> Utils.createNeighborsBoxParallel(
+				data.venueLoc, new HashMap<>(), Utils.countCks(data.cksMap), Utils.collectUsers(data.cksMap), data.scale, true).size());
+		run(runner, threads, filter, "createNeighborsBox.knn", false, (t, i) -> Utils.createNeighborsBox(data.venueLoc,
+				new HashMap<>(), Utils.countCks(data.cksMap), Utils.collectUsers(data.cksMap), data.scale, true,
+				NeighborPolicy.nearest(16)).size());
+		LocalProjection projection = LocalProjection.around(data.venueLoc.values().toArray(new PointObject[0]));
+		run(runner, threads, filter, "createNeighborsBox.knn.projected", false, (t, i) -> Utils.createNeighborsBox(
+				data.venueLoc, new HashMap<>(), Utils.countCks(data.cksMap), Utils.collectUsers(data.cksMap), data.scale,
+				true, NeighborPolicy.nearest(16).projected(projection)).size());
+		run(runner, threads, filter, "createNeighborsQuadtree", false, (t, i) -> QuadtreeAreaMap.createNeighbors(
+				data.venueLoc, new HashMap<>(), Utils.countCks(data.cksMap), Utils.collectUsers(data.cksMap), 64, true).size());
+		run(runner, threads, filter, "readNumCksFile", false, (t, i) -> ReadFile.readNumCksFile(cksFile).size());
+		run(runner, threads, filter, "readNumCksFileMapped", false, (t, i) -> ReadFile.readNumCksFileMapped(cksFile).size());
+		run(runner, threads, filter, "parseCheckins", false, (t, i) -> CheckinFileParser.parse(cksFile).getNumEdges());
+	}
+
+	/**
+	 *
+	 * @param runner
+	 * @param threads
+	 * @param filter
+	 * @param name
+	 * @param isExclusive	true if the operation changes the model so it can only run in one thread
+	 * @param op
+	 * @throws Exception
+	 */
+	private void run(BenchmarkRunner runner, int[] threads, String filter, String name, boolean isExclusive,
+			BenchmarkRunner.Operation op) throws Exception {
+		if (!name.contains(filter))
+			return;
+		for (int t : threads) {
+			if (isExclusive && t != 1)
+				continue;
+			System.out.println(runner.run(name, t, op));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		String size = "small";
+		String threads = "1,2,4";
+		int warmup = 3;
+		int iterations = 5;
+		long time = 1000;
+		String filter = "";
+		long seed = 1;
+		boolean isSigmoid = true;
+
+		for (String arg : args) {
+			String[] comp = arg.split("=", 2);
+			if (comp.length != 2)
+				throw new IllegalArgumentException("argument must be key=value: " + arg);
+			switch (comp[0]) {
+			case "size": size = comp[1]; break;
+			case "threads": threads = comp[1]; break;
+			case "warmup": warmup = Integer.parseInt(comp[1]); break;
+			case "iterations": iterations = Integer.parseInt(comp[1]); break;
+			case "time": time = Long.parseLong(comp[1]); break;
+			case "filter": filter = comp[1]; break;
+			case "seed": seed = Long.parseLong(comp[1]); break;
+			case "sigmoid": isSigmoid = Boolean.parseBoolean(comp[1]); break;
+			default: throw new IllegalArgumentException("unknown argument: " + arg);
+			}
+		}
+
+		int s;
+		switch (size) {
+		case "small": s = SyntheticData.SMALL; break;
+		case "medium": s = SyntheticData.MEDIUM; break;
+		case "large": s = SyntheticData.LARGE; break;
+		case "city": s = SyntheticData.CITY; break;
+		default: throw new IllegalArgumentException("unknown size: " + size);
+		}
+
+		String[] comp = threads.split(",");
+		int[] numThreads = new int[comp.length];
+		for (int i = 0; i < comp.length; i++)
+			numThreads[i] = Integer.parseInt(comp[i]);
+
+		long start = System.nanoTime();
+		SyntheticData data = new SyntheticData(s, seed);
+		System.out.println("data " + size + ": " + data.numUsers + " users, " + data.numVenues + " venues, "
+				+ data.areaMap.size() + " areas, generated in " + (System.nanoTime() - start) / 1000000 + " ms");
+		System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+
+		BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, time);
+		new TrainingBenchmark(data, isSigmoid).runAll(runner, numThreads, filter);
+		System.out.println("sink " + runner.getSink());
+	}
+}
@@ -12,6 +12,7 @@ import org.object.UserObject;
 import org.object.VenueObject;
 import org.utils.Distance;
 import org.utils.Function;
+import org.utils.SpatialIndex;
 import org.utils.Utils;
 
 public class Evaluation {	
@@ -70,30 +71,19 @@ public class Evaluation {
 			venueScope.put(String.valueOf(i), scope);
 		}
 		
-		// calculate the neighbors 
+		// calculate the neighbors. Venues are neighbors if distance between them is less than threshold
 		neighbors = new HashMap<>();
+		PointObject[] points = new PointObject[numVenues];
+		for (int i = 0; i < numVenues; i++)
+			points[i] = venueLoc.get(String.valueOf(i));
+		int[][] nbrs = new SpatialIndex(points, threshold).allWithinRadius(threshold);
 		for (int i = 0; i < numVenues; i++) {
-			PointObject p1 = venueLoc.get(String.valueOf(i));
-			for (int j = i+1; j < numVenues; j++) {
-				System.out.println(i + ":" + j);
-				PointObject p2 = venueLoc.get(String.valueOf(j));
-				double d = Distance.calculateDistance(p1, p2);
-				if (d < threshold) {
-					// neighbors if distance between 2 venues are not >= 100 meter
-					ArrayList<String> n_i = neighbors.get(String.valueOf(i));
-					ArrayList<String> n_j = neighbors.get(String.valueOf(j));
-					if (n_i == null) {
-						n_i = new ArrayList<>();
-						neighbors.put(String.valueOf(i), n_i);
-					}
-					n_i.add(String.valueOf(j));
-					if (n_j == null) {
-						n_j = new ArrayList<>();
-						neighbors.put(String.valueOf(j), n_j);
-					}
-					n_j.add(String.valueOf(i));
-				}
-			}
+			if (nbrs[i] == null)
+				continue;
+			ArrayList<String> n_i = new ArrayList<>(nbrs[i].length);
+			for (int j : nbrs[i])
+				n_i.add(String.valueOf(j));
+			neighbors.put(String.valueOf(i), n_i);
 		}
 		
 		// create area map
@@ -0,0 +1,90 @@
+package org.model;
+
+/**
+ * Array of doubles with a current and a candidate buffer. Values are written to the candidate buffer; accepting the
+ * candidate swaps the two buffers and rejecting it restores the candidate from the current one. Changed indices are
+ * logged so that both only cost O(#changed values) and never allocate.
+ * @author tndoan
+ *
+ */
+class BufferedArray {
+
+	private double[] current;
+
+	private double[] candidate;
+
+	/**
+	 * indices which are different between current and candidate buffer
+	 */
+	private final boolean[] isChanged;
+	private final int[] changed;
+	private int numChanged;
+
+	/**
+	 *
+	 * @param values	initial values; the array is used as current buffer
+	 */
+	BufferedArray(double[] values) {
+		this.current = values;
+		this.candidate = values.clone();
+		this.isChanged = new boolean[values.length];
+		this.changed = new int[values.length];
+	}
+
+	double[] current() {
+		return current;
+	}
+
+	double[] candidate() {
+		return candidate;
+	}
+
+	/**
+	 * write value to candidate buffer
+	 * @param i
+	 * @param x
+	 */
+	void set(int i, double x) {
+		candidate[i] = x;
+		if (!isChanged[i]) {
+			isChanged[i] = true;
+			changed[numChanged++] = i;
+		}
+	}
+
+	/**
+	 * candidate buffer becomes current buffer
+	 */
+	void accept() {
+		double[] t = current;
+		current = candidate;
+		candidate = t;
+		sync();
+	}
+
+	/**
+	 * discard all values written to candidate buffer
+	 */
+	void reject() {
+		sync();
+	}
+
+	/**
+	 * copy the whole current buffer to candidate buffer. Used when current buffer is changed directly
+	 */
+	void reset() {
+		System.arraycopy(current, 0, candidate, 0, current.length);
+		for (int k = 0; k < numChanged; k++)
+			isChanged[changed[k]] = false;
+		numChanged = 0;
+	}
+
+	private void sync() {
+		for (int k = 0; k < numChanged; k++) {
+			int i = changed[k];
+			candidate[i] = current[i];
+			isChanged[i] = false;
+		}
+		numChanged = 0;
+	}
+}
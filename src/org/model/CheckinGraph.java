@@ -0,0 +1,246 @@
+package org.model;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.utils.IntColumn;
+
+/**
+ * Check-ins between users and venues in CSR layout, in both directions: venues of each user, sorted by venue index,
+ * and users of each venue. The entries of row i are in [start(i), end(i)). Rows are stored in {@link IntColumn}s, so
+ * the graph can live on the heap, in direct memory or in a mapped file; off the heap the garbage collector does not
+ * scan the check-ins and heap usage does not grow with the number of check-ins.
+ *
+ * Layout of a graph file, little endian, every section starts at a multiple of 8 bytes:
+ * header: magic, version, # users, # venues, # check-ins of users, # check-ins of venues (all int);
+ * ckPtr, ckVenue, ckCount, vuPtr, vuUser, vuCount.
+ * @author tndoan
+ *
+ */
+public final class CheckinGraph {
+
+	/**
+	 * "HPMG"
+	 */
+	public static final int MAGIC = 0x48504D47;
+
+	public static final int VERSION = 1;
+
+	private static final int HEADER_INTS = 6;
+
+	/**
+	 * check-ins of users. Venues of each user are sorted by venue index. Columns are package-private so that
+	 * {@link ModelSnapshot} can write them in its own layout
+	 */
+	final IntColumn ckPtr;
+	final IntColumn ckVenue;
+	final IntColumn ckCount;
+
+	/**
+	 * users who have check-ins in venues and the number of check-ins of each pair
+	 */
+	final IntColumn vuPtr;
+	final IntColumn vuUser;
+	final IntColumn vuCount;
+
+	CheckinGraph(IntColumn ckPtr, IntColumn ckVenue, IntColumn ckCount, IntColumn vuPtr, IntColumn vuUser,
+			IntColumn vuCount) {
+		this.ckPtr = ckPtr;
+		this.ckVenue = ckVenue;
+		this.ckCount = ckCount;
+		this.vuPtr = vuPtr;
+		this.vuUser = vuUser;
+		this.vuCount = vuCount;
+	}
+
+	/**
+	 * graph on the heap; arrays are used, not copied
+	 */
+	CheckinGraph(int[] ckPtr, int[] ckVenue, int[] ckCount, int[] vuPtr, int[] vuUser, int[] vuCount) {
+		this(IntColumn.onHeap(ckPtr), IntColumn.onHeap(ckVenue), IntColumn.onHeap(ckCount), IntColumn.onHeap(vuPtr),
+				IntColumn.onHeap(vuUser), IntColumn.onHeap(vuCount));
+	}
+
+	/**
+	 *
+	 * @return	copy of the graph in direct memory
+	 */
+	public CheckinGraph toDirect() {
+		return new CheckinGraph(IntColumn.direct(ckPtr), IntColumn.direct(ckVenue), IntColumn.direct(ckCount),
+				IntColumn.direct(vuPtr), IntColumn.direct(vuUser), IntColumn.direct(vuCount));
+	}
+
+	/**
+	 * write the graph to a file and map it. The file is written to a temporary file and moved over the old one, so a
+	 * graph which still maps the old file is not broken
+	 * @param fname
+	 * @return	graph mapped from the file
+	 * @throws IOException
+	 */
+	public CheckinGraph toFile(String fname) throws IOException {
+		Path target = Paths.get(fname).toAbsolutePath();
+		Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ModelSnapshot.Output out = new ModelSnapshot.Output(fc);
+			out.putInts(new int[] { MAGIC, VERSION, getNumUsers(), getNumVenues(), ckVenue.length(), vuUser.length() });
+			out.putInts(ckPtr);
+			out.putInts(ckVenue);
+			out.putInts(ckCount);
+			out.putInts(vuPtr);
+			out.putInts(vuUser);
+			out.putInts(vuCount);
+			out.flush();
+		}
+		try {
+			Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+		return map(fname);
+	}
+
+	/**
+	 * map a graph file written by {@link #toFile(String)}
+	 * @param fname
+	 * @return
+	 * @throws IOException	if the file is not a graph file or its version is not supported
+	 */
+	public static CheckinGraph map(String fname) throws IOException {
+		try (FileChannel fc = FileChannel.open(Paths.get(fname), StandardOpenOption.READ)) {
+			if (fc.size() < 4L * HEADER_INTS)
+				throw new IOException(fname + " is not a check-in graph");
+			ModelSnapshot.Input in = new ModelSnapshot.Input(fc);
+			int[] h = in.getInts(HEADER_INTS);
+			if (h[0] != MAGIC)
+				throw new IOException(fname + " is not a check-in graph");
+			if (h[1] != VERSION)
+				throw new IOException("unsupported check-in graph version " + h[1] + " in " + fname);
+			int numUsers = h[2], numVenues = h[3], numCk = h[4], numVu = h[5];
+			return new CheckinGraph(in.mapInts(numUsers + 1), in.mapInts(numCk), in.mapInts(numCk),
+					in.mapInts(numVenues + 1), in.mapInts(numVu), in.mapInts(numVu));
+		}
+	}
+
+	/**
+	 *
+	 * @return	true if the check-ins are in direct memory or in a mapped file
+	 */
+	public boolean isOffHeap() {
+		return ckVenue.isOffHeap();
+	}
+
+	public int getNumUsers() {
+		return ckPtr.length() - 1;
+	}
+
+	public int getNumVenues() {
+		return vuPtr.length() - 1;
+	}
+
+	/**
+	 *
+	 * @return	number of pairs of user and venue with check-ins
+	 */
+	public int getNumEdges() {
+		return ckVenue.length();
+	}
+
+	/**
+	 *
+	 * @param u	index of user
+	 * @return	first check-in of user
+	 */
+	public int ckStart(int u) {
+		return ckPtr.get(u);
+	}
+
+	/**
+	 *
+	 * @param u	index of user
+	 * @return	end of check-ins of user, exclusive
+	 */
+	public int ckEnd(int u) {
+		return ckPtr.get(u + 1);
+	}
+
+	/**
+	 *
+	 * @param e	index of check-in of user
+	 * @return	index of venue
+	 */
+	public int ckVenue(int e) {
+		return ckVenue.get(e);
+	}
+
+	/**
+	 *
+	 * @param e	index of check-in of user
+	 * @return	number of check-ins
+	 */
+	public int ckCount(int e) {
+		return ckCount.get(e);
+	}
+
+	/**
+	 *
+	 * @param v	index of venue
+	 * @return	first user of venue
+	 */
+	public int vuStart(int v) {
+		return vuPtr.get(v);
+	}
+
+	/**
+	 *
+	 * @param v	index of venue
+	 * @return	end of users of venue, exclusive
+	 */
+	public int vuEnd(int v) {
+		return vuPtr.get(v + 1);
+	}
+
+	/**
+	 *
+	 * @param e	index of check-in of venue
+	 * @return	index of user
+	 */
+	public int vuUser(int e) {
+		return vuUser.get(e);
+	}
+
+	/**
+	 *
+	 * @param e	index of check-in of venue
+	 * @return	number of check-ins
+	 */
+	public int vuCount(int e) {
+		return vuCount.get(e);
+	}
+
+	/**
+	 *
+	 * @param v	index of venue
+	 * @return	true if some user has check-ins in venue
+	 */
+	public boolean hasUsers(int v) {
+		return vuPtr.get(v) != vuPtr.get(v + 1);
+	}
+
+	/**
+	 * get number of check-ins that user has done in venue. Binary search over check-ins of user
+	 * @param u	index of user
+	 * @param v	index of venue
+	 * @return	number of check-ins; 0 if user has never visited the venue
+	 */
+	public int numCks(int u, int v) {
+		int pos = ckVenue.binarySearch(ckPtr.get(u), ckPtr.get(u + 1), v);
+		return pos < 0 ? 0 : ckCount.get(pos);
+	}
+}
@@ -0,0 +1,172 @@
+package org.model;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * State of {@link Model#learnParameter(int)} after an iteration: scopes of venues and areas, locations of users,
+ * number of the iteration and its log likelihood. A checkpoint only fits the model it is written from; ids of users,
+ * venues and areas are summed up in a fingerprint which is checked when the checkpoint is restored.
+ *
+ * A checkpoint is written to a temporary file in the same directory, forced to disk and then moved over the old one
+ * atomically, so a crash never leaves a broken checkpoint. The layout uses the sections of {@link ModelSnapshot}:
+ * header (magic, version, # users, # venues, # areas, fingerprint as 2 ints, iteration, check-in mode, converged),
+ * log likelihood, venue scopes, area scopes, latitudes and longitudes of users.
+ * @author tndoan
+ *
+ */
+public class Checkpoint {
+
+	/**
+	 * "HPMC"
+	 */
+	public static final int MAGIC = 0x48504D43;
+
+	public static final int VERSION = 1;
+
+	private static final int HEADER_INTS = 10;
+
+	private final int iteration;
+	private final double llh;
+	private final int checkinMode;
+	private final boolean isConverged;
+
+	private final long fingerprint;
+	private final double[] venueScope;
+	private final double[] areaScope;
+	private final double[] userLat;
+	private final double[] userLng;
+
+	private Checkpoint(int iteration, double llh, int checkinMode, boolean isConverged, long fingerprint,
+			double[] venueScope, double[] areaScope, double[] userLat, double[] userLng) {
+		this.iteration = iteration;
+		this.llh = llh;
+		this.checkinMode = checkinMode;
+		this.isConverged = isConverged;
+		this.fingerprint = fingerprint;
+		this.venueScope = venueScope;
+		this.areaScope = areaScope;
+		this.userLat = userLat;
+		this.userLng = userLng;
+	}
+
+	/**
+	 *
+	 * @return	number of the last finished iteration
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	/**
+	 *
+	 * @return	log likelihood after the last finished iteration
+	 */
+	public double getLLH() {
+		return llh;
+	}
+
+	public int getCheckinMode() {
+		return checkinMode;
+	}
+
+	/**
+	 *
+	 * @return	true if learning had converged, so nothing is left to do
+	 */
+	public boolean isConverged() {
+		return isConverged;
+	}
+
+	/**
+	 * write the current state of the core atomically
+	 * @param fname
+	 * @param core
+	 * @param iteration		number of the last finished iteration
+	 * @param llh			log likelihood after this iteration
+	 * @param checkinMode
+	 * @param isConverged
+	 * @throws IOException
+	 */
+	public static void write(String fname, ModelCore core, int iteration, double llh, int checkinMode,
+			boolean isConverged) throws IOException {
+		Path target = Paths.get(fname).toAbsolutePath();
+		Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+		try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			long fingerprint = fingerprint(core);
+			ModelSnapshot.Output out = new ModelSnapshot.Output(fc);
+			out.putInts(new int[] { MAGIC, VERSION, core.getNumUsers(), core.getNumVenues(), core.getNumAreas(),
+					(int) (fingerprint >>> 32), (int) fingerprint, iteration, checkinMode, isConverged ? 1 : 0 });
+			out.putDoubles(new double[] { llh });
+			out.putDoubles(core.venueScope);
+			out.putDoubles(core.areaScope);
+			out.putDoubles(core.userLat);
+			out.putDoubles(core.userLng);
+			out.flush();
+			fc.force(true);
+		}
+		try {
+			Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 *
+	 * @param fname
+	 * @return
+	 * @throws IOException	if the file is not a checkpoint or its version is not supported
+	 */
+	public static Checkpoint read(String fname) throws IOException {
+		try (FileChannel fc = FileChannel.open(Paths.get(fname), StandardOpenOption.READ)) {
+			if (fc.size() < 4L * HEADER_INTS)
+				throw new IOException(fname + " is not a checkpoint");
+			ModelSnapshot.Input in = new ModelSnapshot.Input(fc);
+			int[] h = in.getInts(HEADER_INTS);
+			if (h[0] != MAGIC)
+				throw new IOException(fname + " is not a checkpoint");
+			if (h[1] != VERSION)
+				throw new IOException("unsupported checkpoint version " + h[1] + " in " + fname);
+			int numUsers = h[2], numVenues = h[3], numAreas = h[4];
+			long fingerprint = ((long) h[5] << 32) | (h[6] & 0xffffffffL);
+			double llh = in.getDoubles(1)[0];
+			return new Checkpoint(h[7], llh, h[8], h[9] != 0, fingerprint, in.getDoubles(numVenues),
+					in.getDoubles(numAreas), in.getDoubles(numUsers), in.getDoubles(numUsers));
+		}
+	}
+
+	/**
+	 * copy scopes and user locations of checkpoint to the core
+	 * @param core
+	 * @throws IllegalArgumentException	if the checkpoint is written from another model
+	 */
+	void restore(ModelCore core) {
+		if (fingerprint != fingerprint(core) || venueScope.length != core.getNumVenues()
+				|| areaScope.length != core.getNumAreas() || userLat.length != core.getNumUsers())
+			throw new IllegalArgumentException("checkpoint does not belong to this model");
+		core.restoreState(venueScope, areaScope, userLat, userLng);
+	}
+
+	/**
+	 *
+	 * @param core
+	 * @return	hash of ids of users, venues and areas in order of index
+	 */
+	private static long fingerprint(ModelCore core) {
+		long h = 1125899906842597L;
+		for (String[] ids : new String[][] { core.userIds, core.venueIds, core.areaIds }) {
+			h = 31 * h + ids.length;
+			for (String id : ids)
+				h = 31 * h + id.hashCode();
+		}
+		return h;
+	}
+}
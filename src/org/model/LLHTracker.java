@@ -0,0 +1,283 @@
+package org.model;
+
+import java.util.Arrays;
+
+import org.utils.CompensatedSum;
+import org.utils.FastFunction;
+
+/**
+ * Keep the log likelihood of the whole data up to date while scopes of venues and areas change.
+ *
+ * The log likelihood is split into one term for each area and one term for each venue:
+ * area term = sum over check-ins (u, v) with v in the area of w_uv * (-log sigma_a - d(u, a) / (2 sigma_a^2))
+ *           = -W_a * log sigma_a - D_a / (2 sigma_a^2), where W_a = sum w_uv and D_a = sum w_uv * d(u, a);
+ * venue term = w_v * sum over neighbors n of log P(v wins n).
+ * W_a and D_a only change when users move and are summed from {@link VenueStats}, so a new area scope costs O(1). A new venue scope only changes the
+ * terms of the venue and of venues which have it as neighbor.
+ *
+ * New scopes are a candidate: {@link #setVenueScope(int, double)} writes to the candidate buffers of the core, the
+ * scopes of the areas of changed venues are recomputed (square root of sum of square scopes of their venues) in
+ * {@link #getCandidateLLH()}, and {@link #accept()} or {@link #reject()} swaps or discards the candidate. Terms are
+ * double buffered in the same way, so evaluating a candidate neither copies nor allocates.
+ * @author tndoan
+ *
+ */
+public class LLHTracker {
+
+	private final ModelCore core;
+
+	private final boolean isSigmoid;
+
+	private final boolean isArea;
+
+	private final boolean isCompetition;
+
+	/**
+	 * venues which have the venue as neighbor, CSR layout
+	 */
+	private final int[] revPtr;
+	private final int[] revIdx;
+
+	/**
+	 * sum of weights and sum of weighted square distances of check-ins of each area
+	 */
+	private final double[] areaW;
+	private final double[] areaD;
+
+	/**
+	 * contribution of each area and each venue to the log likelihood, current and candidate
+	 */
+	private final BufferedArray areaTerms;
+	private final BufferedArray venueTerms;
+
+	/**
+	 * dirty flags and lists of areas and venues whose terms need to be recomputed
+	 */
+	private final boolean[] isAreaDirty;
+	private final int[] dirtyAreas;
+	private int numDirtyAreas;
+	private final boolean[] isVenueDirty;
+	private final int[] dirtyVenues;
+	private int numDirtyVenues;
+
+	/**
+	 * log likelihood of the whole data, current and candidate
+	 */
+	private CompensatedSum total = new CompensatedSum();
+	private CompensatedSum candTotal = new CompensatedSum();
+
+	/**
+	 * true if candTotal holds the log likelihood of a candidate
+	 */
+	private boolean hasCandidate;
+
+	/**
+	 *
+	 * @param core
+	 * @param stats		sufficient statistics of venues for current locations of users
+	 * @param isSigmoid
+	 * @param modeModel
+	 */
+	public LLHTracker(ModelCore core, VenueStats stats, boolean isSigmoid, int modeModel) {
+		this.core = core;
+		this.isSigmoid = isSigmoid;
+		this.isArea = modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION;
+		this.isCompetition = modeModel == ModeModel.COMBINED || modeModel == ModeModel.NEIGHBORHOOD_COMPETITION;
+
+		int numVenues = core.getNumVenues();
+		int numAreas = core.getNumAreas();
+
+		// reverse the neighbor lists
+		revPtr = new int[numVenues + 1];
+		for (int k = 0; k < core.nbrIdx.length; k++)
+			revPtr[core.nbrIdx[k] + 1]++;
+		for (int v = 0; v < numVenues; v++)
+			revPtr[v + 1] += revPtr[v];
+		revIdx = new int[core.nbrIdx.length];
+		int[] pos = Arrays.copyOf(revPtr, numVenues);
+		for (int v = 0; v < numVenues; v++) {
+			for (int k = core.nbrPtr[v]; k < core.nbrPtr[v + 1]; k++)
+				revIdx[pos[core.nbrIdx[k]]++] = v;
+		}
+
+		areaW = new double[numAreas];
+		areaD = new double[numAreas];
+		areaTerms = new BufferedArray(new double[numAreas]);
+		isAreaDirty = new boolean[numAreas];
+		dirtyAreas = new int[numAreas];
+		isVenueDirty = new boolean[numVenues];
+		dirtyVenues = new int[numVenues];
+
+		double[] venueTerm = new double[numVenues];
+		for (int v = 0; v < numVenues; v++)
+			venueTerm[v] = computeVenueTerm(v, core.venueScope);
+		venueTerms = new BufferedArray(venueTerm);
+		updateUserLocations(stats);
+	}
+
+	/**
+	 * recompute the sums of weighted square distances of areas. It must be called after locations of users change
+	 * and when there is no pending candidate.
+	 * @param stats	sufficient statistics of venues for current locations of users
+	 */
+	public void updateUserLocations(VenueStats stats) {
+		Arrays.fill(areaW, 0.0);
+		Arrays.fill(areaD, 0.0);
+		if (isArea) {
+			for (int v = 0; v < core.getNumVenues(); v++) {
+				int a = core.venueArea[v];
+				if (a < 0)
+					continue;
+				areaW[a] += stats.sumW[v];
+				areaD[a] += stats.sumWD[v];
+			}
+		}
+		double[] areaTerm = areaTerms.current();
+		for (int a = 0; a < areaTerm.length; a++)
+			areaTerm[a] = computeAreaTerm(a, core.areaScope);
+		areaTerms.reset();
+
+		total.reset();
+		for (double t : areaTerm)
+			total.add(t);
+		for (double t : venueTerms.current())
+			total.add(t);
+		hasCandidate = false;
+	}
+
+	/**
+	 * change the candidate scope of venue
+	 * @param v		index of venue
+	 * @param scope	new scope
+	 */
+	public void setVenueScope(int v, double scope) {
+		markArea(core.venueArea[v]);
+		if (core.venueScopes.candidate()[v] == scope)
+			return;
+		core.venueScopes.set(v, scope);
+		markVenue(v);
+		for (int k = revPtr[v]; k < revPtr[v + 1]; k++)
+			markVenue(revIdx[k]);
+	}
+
+	/**
+	 * recompute the scopes of all areas when the log likelihood is read next time
+	 */
+	public void markAllAreas() {
+		for (int a = 0; a < core.getNumAreas(); a++)
+			markArea(a);
+	}
+
+	/**
+	 *
+	 * @return	log likelihood of the whole data with current scopes
+	 */
+	public double getLLH() {
+		return total.value();
+	}
+
+	/**
+	 * refresh the terms of changed venues and areas in the candidate buffers
+	 * @return	log likelihood of the whole data with candidate scopes
+	 */
+	public double getCandidateLLH() {
+		if (!hasCandidate) {
+			candTotal.set(total);
+			hasCandidate = true;
+		}
+		double[] venueScope = core.venueScopes.candidate();
+		double[] areaScope = core.areaScopes.candidate();
+		double[] areaTerm = areaTerms.candidate();
+		double[] venueTerm = venueTerms.candidate();
+
+		for (int i = 0; i < numDirtyAreas; i++) {
+			int a = dirtyAreas[i];
+			isAreaDirty[a] = false;
+			int start = core.avPtr[a];
+			int end = core.avPtr[a + 1];
+			if (start == end)
+				continue;
+			double scope = 0.0;
+			for (int k = start; k < end; k++) {
+				double vScope = venueScope[core.avVenue[k]];
+				scope += vScope * vScope;
+			}
+			core.areaScopes.set(a, Math.sqrt(scope));
+			double term = computeAreaTerm(a, areaScope);
+			candTotal.add(term - areaTerm[a]);
+			areaTerms.set(a, term);
+		}
+		numDirtyAreas = 0;
+
+		for (int i = 0; i < numDirtyVenues; i++) {
+			int v = dirtyVenues[i];
+			isVenueDirty[v] = false;
+			double term = computeVenueTerm(v, venueScope);
+			candTotal.add(term - venueTerm[v]);
+			venueTerms.set(v, term);
+		}
+		numDirtyVenues = 0;
+
+		return candTotal.value();
+	}
+
+	/**
+	 * candidate scopes become the current scopes of the model
+	 */
+	public void accept() {
+		getCandidateLLH();
+		core.acceptScopes();
+		areaTerms.accept();
+		venueTerms.accept();
+		CompensatedSum t = total;
+		total = candTotal;
+		candTotal = t;
+		hasCandidate = false;
+	}
+
+	/**
+	 * discard candidate scopes. Scopes of the model are not changed
+	 */
+	public void reject() {
+		for (int i = 0; i < numDirtyAreas; i++)
+			isAreaDirty[dirtyAreas[i]] = false;
+		numDirtyAreas = 0;
+		for (int i = 0; i < numDirtyVenues; i++)
+			isVenueDirty[dirtyVenues[i]] = false;
+		numDirtyVenues = 0;
+		core.rejectScopes();
+		areaTerms.reject();
+		venueTerms.reject();
+		hasCandidate = false;
+	}
+
+	private void markArea(int a) {
+		if (!isAreaDirty[a]) {
+			isAreaDirty[a] = true;
+			dirtyAreas[numDirtyAreas++] = a;
+		}
+	}
+
+	private void markVenue(int v) {
+		if (!isVenueDirty[v]) {
+			isVenueDirty[v] = true;
+			dirtyVenues[numDirtyVenues++] = v;
+		}
+	}
+
+	private double computeAreaTerm(int a, double[] areaScope) {
+		if (!isArea || areaW[a] == 0.0)
+			return 0.0;
+		double scope = areaScope[a];
+		return - areaW[a] * Math.log(scope) - areaD[a] / (2 * scope * scope);
+	}
+
+	private double computeVenueTerm(int v, double[] venueScope) {
+		if (!isCompetition)
+			return 0.0;
+		double w = 0.0;
+		for (int k = core.nbrPtr[v]; k < core.nbrPtr[v + 1]; k++)
+			w += FastFunction.logWin(isSigmoid, venueScope[v] - venueScope[core.nbrIdx[k]]);
+		return w * core.venueTotalCks[v];
+	}
+}
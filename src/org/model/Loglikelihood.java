@@ -3,17 +3,15 @@ package org.model;
 import java.util.ArrayList;
 import java.util.HashMap;
 
-import com.sun.javafx.sg.prism.NGShape;
-import org.apache.commons.math3.distribution.NormalDistribution;
 import org.object.AreaObject;
 import org.object.UserObject;
 import org.object.VenueObject;
+import org.utils.BatchKernels;
 import org.utils.Distance;
-import org.utils.Function;
+import org.utils.FastFunction;
 
 public class Loglikelihood {
 
-	private static NormalDistribution standardGau = new NormalDistribution();
 	
 	/**
 	 * the total log-likelihood of the whole data
@@ -59,17 +57,8 @@ public class Loglikelihood {
 					VenueObject neighbor = venueMap.get(vId);
 
 					double diff = vo.getInfluenceScope() - neighbor.getInfluenceScope();
-					double logdiff = 0.0;
 
-					if (isSigmoid) {
-						double sigmoid = Function.sigmoidFunction(diff);
-						logdiff = Math.log(sigmoid);
-					} else {
-						double cdf = standardGau.cumulativeProbability(diff);
-						logdiff = Math.log(cdf);
-					}
-
-					w += logdiff;
+					w += FastFunction.logWin(isSigmoid, diff);
 				}
 
 				llh += w * w_v;
@@ -133,11 +122,7 @@ public class Loglikelihood {
 //			double sigma_v = vo.getInfluenceScope();
 			for (String neighbor : neighbors) {
 				VenueObject no = venueMap.get(neighbor); // no = neighbor object
-				if (isSigmoid) {
-					c += Math.log(Function.sigmoidFunction(sigma_v - no.getInfluenceScope()));
-				} else {
-					c += Math.log(standardGau.cumulativeProbability(sigma_v - no.getInfluenceScope()));
-				}
+				c += FastFunction.logWin(isSigmoid, sigma_v - no.getInfluenceScope());
 			}
 			llh += w_v * c;
 
@@ -145,14 +130,316 @@ public class Loglikelihood {
 			for (String neighbor : neighbors) {
 				VenueObject no = venueMap.get(neighbor); // no = neighbor object
 				double w = no.getTotalCks();
-				if (isSigmoid) {
-					llh += w * Math.log(Function.sigmoidFunction(no.getInfluenceScope() - sigma_v));
-				} else {
-					llh += w * Math.log(standardGau.cumulativeProbability(no.getInfluenceScope() - sigma_v));
+				llh += w * FastFunction.logWin(isSigmoid, no.getInfluenceScope() - sigma_v);
+			}
+		}
+
+		return llh;
+	}
+
+	/**
+	 * the total log-likelihood of the whole data computed over the arrays of model core. The first component only
+	 * visits the actual check-ins of users. See {@link #calculateLLH(ModelCore, boolean, int, boolean)}
+	 * @param core
+	 * @param isSigmoid
+	 * @param modeModel
+	 * @return
+	 */
+	public static double calculateLLH(ModelCore core, boolean isSigmoid, int modeModel) {
+		return calculateLLH(core, isSigmoid, modeModel, true);
+	}
+
+	/**
+	 * the total log-likelihood of the whole data computed over the arrays of model core.
+	 *
+	 * If isSparse is false, the first component loops over all pairs of users and venues in the same order as
+	 * {@link #calculateLLH(HashMap, HashMap, HashMap, boolean, int)} when the core is built from the same maps; number of
+	 * check-ins of each pair is found by merging the sorted check-ins of user with the venue loop. It is kept as the
+	 * reference of the sparse mode.
+	 * If isSparse is true, it only visits check-ins, O(#check-ins) instead of O(|U|.|V|): users of each venue are one
+	 * block of the batch kernels of {@link BatchKernels}. Terms are added in another order, so both modes agree up to
+	 * rounding.
+	 * @param core
+	 * @param isSigmoid
+	 * @param modeModel
+	 * @param isSparse	true -> only visit check-ins of users; false -> visit all pairs of users and venues
+	 * @return
+	 */
+	public static double calculateLLH(ModelCore core, boolean isSigmoid, int modeModel, boolean isSparse) {
+		double llh = 0;
+		int numVenues = core.getNumVenues();
+
+		if ((modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION) && isSparse) {
+			// first component of log likelihood, only over check-ins. Users of each venue form one block against
+			// the center of its area
+			for (int v = 0; v < numVenues; v++) {
+				if (!core.checkins.hasUsers(v))
+					continue;
+				int a = core.venueArea[v];
+				llh = areaTerm(core, v, a, core.areaScope[a], llh);
+			}
+		} else if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION) {
+			// first component of log likelihood
+			for (int u = 0; u < core.getNumUsers(); u++) {
+				int e = core.checkins.ckStart(u);
+				int end = core.checkins.ckEnd(u);
+				double uLat = core.userLat[u];
+				double uLng = core.userLng[u];
+				for (int v = 0; v < numVenues; v++) {
+					int a = core.venueArea[v];
+					double scope = core.areaScope[a];
+
+					double distance = Distance.calSqEuDistance(uLat, uLng, core.areaLat[a], core.areaLng[a]);
+
+					double w_iv = 0.0;
+					if (e < end && core.checkins.ckVenue(e) == v)
+						w_iv = core.checkins.ckCount(e++);
+
+					llh += w_iv * (- Math.log(scope) - distance / (2 * scope * scope));
+				}
+			}
+		}
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.NEIGHBORHOOD_COMPETITION) {
+			// second component of log likelihood
+			for (int v = 0; v < numVenues; v++) {
+				double w_v = core.venueTotalCks[v];
+				double w = 0.0;
+
+				for (int k = core.nbrPtr[v]; k < core.nbrPtr[v + 1]; k++) {
+					double diff = core.venueScope[v] - core.venueScope[core.nbrIdx[k]];
+
+					w += FastFunction.logWin(isSigmoid, diff);
 				}
+
+				llh += w * w_v;
+			}
+		}
+
+		return llh;
+	}
+
+	/**
+	 * the total log-likelihood of the whole data computed from the sufficient statistics of venues, so that check-ins
+	 * of users are not needed, e.g. when they are kept on disk by {@link UserPartitions}. It is the same value as
+	 * {@link #calculateLLH(ModelCore, boolean, int, boolean)} up to the order of summation
+	 * @param core
+	 * @param stats		sufficient statistics for current locations of users
+	 * @param isSigmoid
+	 * @param modeModel
+	 * @return
+	 */
+	public static double calculateLLH(ModelCore core, VenueStats stats, boolean isSigmoid, int modeModel) {
+		double llh = 0;
+		int numVenues = core.getNumVenues();
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION) {
+			// first component of log likelihood, one term per venue
+			for (int v = 0; v < numVenues; v++) {
+				int a = core.venueArea[v];
+				if (a < 0)
+					continue;
+				double scope = core.areaScope[a];
+				llh += - stats.sumW[v] * Math.log(scope) - stats.sumWD[v] / (2 * scope * scope);
+			}
+		}
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.NEIGHBORHOOD_COMPETITION) {
+			// second component of log likelihood
+			for (int v = 0; v < numVenues; v++) {
+				double w_v = core.venueTotalCks[v];
+				double w = 0.0;
+
+				for (int k = core.nbrPtr[v]; k < core.nbrPtr[v + 1]; k++) {
+					double diff = core.venueScope[v] - core.venueScope[core.nbrIdx[k]];
+
+					w += FastFunction.logWin(isSigmoid, diff);
+				}
+
+				llh += w * w_v;
+			}
+		}
+
+		return llh;
+	}
+
+	/**
+	 * log likelihood of one venue computed over the arrays of model core. omit constant.
+	 * See {@link #calculateLLH(HashMap, HashMap, HashMap, boolean, String, double, int)}
+	 * @param core
+	 * @param isSigmoid
+	 * @param v			index of venue we want to compute
+	 * @param sigma_v	the influence scope of venue
+	 * @param modeModel	indicate if neighborhood competition, area attraction or both is used in our model
+	 * @return
+	 */
+	public static double calculateLLH(ModelCore core, boolean isSigmoid, int v, double sigma_v, int modeModel) {
+		double llh = 0;
+
+		int a = core.venueArea[v];
+		double curScope = core.venueScope[v];
+		int nStart = core.nbrPtr[v];
+		int nEnd = core.nbrPtr[v + 1];
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION) {
+			// calculate the first term
+			double tempSqScope = core.areaScope[a] * core.areaScope[a] - curScope * curScope + sigma_v * sigma_v;
+			llh = areaTerm(core, v, a, Math.sqrt(tempSqScope), llh);
+
+			// second term
+			for (int k = nStart; k < nEnd; k++) { // loop over all neighbors of venue
+				int n = core.nbrIdx[k];
+				if (!core.checkins.hasUsers(n)) // this neighbor does not have any visits from users
+					continue;
+				int na = core.venueArea[n]; // na = neighbor area
+				// do this because we want to use the new value of sigma_v;
+				// core contains the old one
+				double sqScope = core.areaScope[na] * core.areaScope[na] - curScope * curScope + sigma_v * sigma_v;
+				llh = areaTerm(core, n, na, Math.sqrt(sqScope), llh);
+			}
+		}
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.NEIGHBORHOOD_COMPETITION) {
+			// third term
+			double w_v = core.venueTotalCks[v];
+			double c = 0.0;
+			for (int k = nStart; k < nEnd; k++) {
+				double sigma_n = core.venueScope[core.nbrIdx[k]];
+				c += FastFunction.logWin(isSigmoid, sigma_v - sigma_n);
+			}
+			llh += w_v * c;
+
+			// fourth term
+			for (int k = nStart; k < nEnd; k++) {
+				int n = core.nbrIdx[k];
+				double w = core.venueTotalCks[n];
+				llh += w * FastFunction.logWin(isSigmoid, core.venueScope[n] - sigma_v);
+			}
+		}
+
+		return llh;
+	}
+
+	/**
+	 * log likelihood of one venue computed from the sufficient statistics of venues. omit constant.
+	 * Each evaluation costs O(#neighbors). See {@link #calculateLLH(ModelCore, boolean, int, double, int)}
+	 * @param core
+	 * @param stats		sufficient statistics for current locations of users
+	 * @param isSigmoid
+	 * @param v			index of venue we want to compute
+	 * @param sigma_v	the influence scope of venue
+	 * @param modeModel	indicate if neighborhood competition, area attraction or both is used in our model
+	 * @return
+	 */
+	public static double calculateLLH(ModelCore core, VenueStats stats, boolean isSigmoid, int v, double sigma_v, int modeModel) {
+		double llh = 0;
+
+		int a = core.venueArea[v];
+		double sqCurScope = core.venueScope[v] * core.venueScope[v];
+		int nStart = core.nbrPtr[v];
+		int nEnd = core.nbrPtr[v + 1];
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION) {
+			// first term
+			double tempSqScope = core.areaScope[a] * core.areaScope[a] - sqCurScope + sigma_v * sigma_v;
+			llh += - stats.sumW[v] * Math.log(Math.sqrt(tempSqScope)) - stats.sumWD[v] / (2.0 * tempSqScope);
+
+			// second term
+			for (int k = nStart; k < nEnd; k++) {
+				int n = core.nbrIdx[k];
+				if (!core.checkins.hasUsers(n)) // this neighbor does not have any visits from users
+					continue;
+				int na = core.venueArea[n];
+				double sqScope = core.areaScope[na] * core.areaScope[na] - sqCurScope + sigma_v * sigma_v;
+				llh += - stats.sumW[n] * Math.log(Math.sqrt(sqScope)) - stats.sumWD[n] / (2.0 * sqScope);
+			}
+		}
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.NEIGHBORHOOD_COMPETITION) {
+			// third and fourth term
+			double w_v = core.venueTotalCks[v];
+			for (int k = nStart; k < nEnd; k++) {
+				int n = core.nbrIdx[k];
+				double sigma_n = core.venueScope[n];
+				llh += w_v * FastFunction.logWin(isSigmoid, sigma_v - sigma_n)
+						+ core.venueTotalCks[n] * FastFunction.logWin(isSigmoid, sigma_n - sigma_v);
 			}
 		}
 
 		return llh;
 	}
+
+	/**
+	 * first and second differentiation of log likelihood of one venue with respect to its scope, computed from the
+	 * sufficient statistics of venues. See {@link #calculateLLH(ModelCore, VenueStats, boolean, int, double, int)}
+	 * @param core
+	 * @param stats		sufficient statistics for current locations of users
+	 * @param isSigmoid
+	 * @param v			index of venue
+	 * @param sigma_v	the influence scope of venue
+	 * @param modeModel	indicate if neighborhood competition, area attraction or both is used in our model
+	 * @param result	result[0] is the first differentiation, result[1] is the second one
+	 */
+	public static void diffLLH(ModelCore core, VenueStats stats, boolean isSigmoid, int v, double sigma_v, int modeModel,
+			double[] result) {
+		double d1 = 0.0;
+		double d2 = 0.0;
+
+		double sqCurScope = core.venueScope[v] * core.venueScope[v];
+		double sqSigma = sigma_v * sigma_v;
+		int nStart = core.nbrPtr[v];
+		int nEnd = core.nbrPtr[v + 1];
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION) {
+			// T = -W log(sqrt(S)) - D / (2S) with S = c + sigma^2
+			for (int k = nStart - 1; k < nEnd; k++) {
+				int n = k < nStart ? v : core.nbrIdx[k];
+				if (!core.checkins.hasUsers(n))
+					continue;
+				int na = core.venueArea[n];
+				double w = stats.sumW[n];
+				double d = stats.sumWD[n];
+				double sq = core.areaScope[na] * core.areaScope[na] - sqCurScope + sqSigma;
+				d1 += - w * sigma_v / sq + d * sigma_v / (sq * sq);
+				d2 += - w / sq + 2.0 * w * sqSigma / (sq * sq) + d / (sq * sq) - 4.0 * d * sqSigma / (sq * sq * sq);
+			}
+		}
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.NEIGHBORHOOD_COMPETITION) {
+			double w_v = core.venueTotalCks[v];
+			for (int k = nStart; k < nEnd; k++) {
+				int n = core.nbrIdx[k];
+				double w_n = core.venueTotalCks[n];
+				double diff = sigma_v - core.venueScope[n];
+				d1 += w_v * FastFunction.diffLogWin(isSigmoid, diff) - w_n * FastFunction.diffLogWin(isSigmoid, -diff);
+				d2 += w_v * FastFunction.diff2LogWin(isSigmoid, diff) + w_n * FastFunction.diff2LogWin(isSigmoid, -diff);
+			}
+		}
+
+		result[0] = d1;
+		result[1] = d2;
+	}
+
+	/**
+	 * contribution of check-ins of a venue to the likelihood of its area. Users of the venue are gathered into one
+	 * block for {@link BatchKernels#gaussianAreaTerm(BatchKernels.Block, int, double, double, double)}
+	 * @param core
+	 * @param v			index of venue
+	 * @param a			index of area of venue
+	 * @param scope		scope of area
+	 * @param llh		log likelihood which the contribution is added to
+	 * @return
+	 */
+	private static double areaTerm(ModelCore core, int v, int a, double scope, double llh) {
+		int start = core.checkins.vuStart(v);
+		int n = core.checkins.vuEnd(v) - start;
+		BatchKernels.Block block = BatchKernels.block(n);
+		for (int i = 0; i < n; i++) {
+			int u = core.checkins.vuUser(start + i);
+			block.lat[i] = core.userLat[u];
+			block.lng[i] = core.userLng[u];
+			block.w[i] = core.checkins.vuCount(start + i);
+		}
+		return llh + BatchKernels.gaussianAreaTerm(block, n, core.areaLat[a], core.areaLng[a], scope);
+	}
 }
@@ -5,16 +5,21 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 import org.object.AreaObject;
 import org.object.PointObject;
 import org.object.UserObject;
 import org.object.VenueObject;
-import org.utils.Distance;
-import org.utils.Function;
+import org.utils.CheckinEdges;
+import org.utils.FastFunction;
+import org.utils.IdDictionary;
 import org.utils.ReadFile;
 import org.utils.Utils;
 
@@ -58,6 +63,64 @@ public class Model {
 	 */
 	private int modeModel;
 	
+	/**
+	 * integer indexed arrays of model. All training is done over the core; object maps above are kept in sync
+	 * when they are read
+	 */
+	private ModelCore core;
+	
+	/**
+	 * true if the log likelihood of the whole data only visits the actual check-ins of users; false if it visits
+	 * all pairs of users and venues. Both give the same value
+	 */
+	private boolean isSparseLLH = true;
+	
+	/**
+	 * evaluator of log likelihood of the whole data on many threads; null if log likelihood is computed on the current thread
+	 */
+	private ParallelLoglikelihood parallelLLH;
+	
+	/**
+	 * sufficient statistics of check-ins of venues for current locations of users; null if users have moved since
+	 * they were computed
+	 */
+	private volatile VenueStats venueStats;
+	
+	/**
+	 * optimizer of influence scope of venues. See {@link ScopeOptimizer}
+	 */
+	private int scopeOptimizer = ScopeOptimizer.GRADIENT_DESCENT;
+	
+	/**
+	 * number of evaluations of log likelihood and of its differentiation done by optimizers of scope of venues
+	 */
+	private final LongAdder numLLHEvals = new LongAdder();
+	private final LongAdder numGradEvals = new LongAdder();
+	
+	/**
+	 * file of checkpoints of learning; null if no checkpoint is written
+	 */
+	private String checkpointFile;
+	
+	/**
+	 * a checkpoint is written when this number of iterations or this time in milliseconds has passed since the last
+	 * one; 0 -> the condition is not used
+	 */
+	private int checkpointIterations;
+	private long checkpointMillis;
+	
+	/**
+	 * true if check-ins of the core are kept off the heap; they are written to checkinsFile and mapped, or to direct
+	 * memory if it is null
+	 */
+	private boolean isCheckinsOffHeap;
+	private String checkinsFile;
+	
+	/**
+	 * check-ins of users kept on disk while the model is trained out of core; null if check-ins are in the core
+	 */
+	private UserPartitions userPartitions;
+	
 	public Model() {
 		
 	}
@@ -73,6 +136,7 @@ public class Model {
 		this.unknownLocUsers = unknownLocUsers;
 		this.isSigmoid = isSigmoid;
 		this.modeModel = modeModel;
+		this.core = new ModelCore(userMap, venueMap, areaMap, unknownLocUsers);
 	}
 	
 	/**
@@ -98,23 +162,27 @@ public class Model {
 		userMap = new HashMap<>();
 		unknownLocUsers = new HashSet<>();
 		
-		//read data from files
-		HashMap<String, String> vInfo = ReadFile.readLocation(venueLocFile);
-		HashMap<String, HashMap<String, Integer>> cksMap = ReadFile.readNumCksFile(cksFile);
+		//read data from files, at the same time
+		CompletableFuture<HashMap<String, String>> vInfoTask = 
+				CompletableFuture.supplyAsync(() -> ReadFile.readLocationParallel(venueLocFile));
+		CheckinEdges edges = ReadFile.readCheckinEdges(cksFile);
+		HashMap<String, HashMap<String, Integer>> cksMap = edges.toMap();
+		HashMap<String, String> vInfo = vInfoTask.join();
 		
 		HashMap<String, ArrayList<String>> userOfVenueMap = Utils.collectUsers(cksMap);
 		
-		// make venue object
+		// make venue object. Ids of venues are interned so that all structures share the Strings of check-ins
+		IdDictionary venueDict = new IdDictionary(edges.getVenueIds());
 		HashMap<String, PointObject> vLocInfo = new HashMap<>();
 		for (String vId : vInfo.keySet()) {
 			PointObject p = new PointObject(vInfo.get(vId));
-			vLocInfo.put(vId, p);
+			vLocInfo.put(venueDict.intern(vId), p);
 		}
 		
 		HashMap<String, Integer> countMap = Utils.countCks(cksMap);
 
 		areaMap = new HashMap<>();
-		venueMap = Utils.createNeighborsBox(vLocInfo, areaMap, countMap, userOfVenueMap, scale, isAverageLocation);
+		venueMap = Utils.createNeighborsBoxParallel(vLocInfo, areaMap, countMap, userOfVenueMap, scale, isAverageLocation);
 		
 		// make user object
 		Set<String> uSet = cksMap.keySet();
@@ -124,6 +192,8 @@ public class Model {
 			UserObject u = new UserObject(uId, uPoint, true, checkinMap);
 			userMap.put(uId, u);
 		}
+		
+		core = new ModelCore(userMap, venueMap, areaMap, unknownLocUsers);
 	}
 		
 	public Model(String venueLocFile, String userLocFile, String cksFile, boolean isAverageLocation, boolean isSigmoid,
@@ -139,23 +209,32 @@ public class Model {
 		userMap = new HashMap<>();
 		unknownLocUsers = new HashSet<>();
 		
-		// read data from files
-		HashMap<String, String> vInfo = ReadFile.readLocation(venueLocFile);
-		HashMap<String, String> uInfo = ReadFile.readLocation(userLocFile);
-		HashMap<String, HashMap<String, Integer>> cksMap = ReadFile.readNumCksFile(cksFile);
+		// read data from files, at the same time
+		CompletableFuture<HashMap<String, String>> vInfoTask = 
+				CompletableFuture.supplyAsync(() -> ReadFile.readLocationParallel(venueLocFile));
+		CompletableFuture<HashMap<String, String>> uInfoTask = 
+				CompletableFuture.supplyAsync(() -> ReadFile.readLocationParallel(userLocFile));
+		CheckinEdges edges = ReadFile.readCheckinEdges(cksFile);
+		HashMap<String, HashMap<String, Integer>> cksMap = edges.toMap();
+		HashMap<String, String> vInfo = vInfoTask.join();
+		HashMap<String, String> uInfo = uInfoTask.join();
 		
 		HashMap<String, ArrayList<String>> userOfVenueMap = Utils.collectUsers(cksMap);
 		
+		// ids of users and venues are interned so that all structures share the Strings of check-ins
+		IdDictionary userDict = new IdDictionary(edges.getUserIds());
+		IdDictionary venueDict = new IdDictionary(edges.getVenueIds());
 		HashMap<String, PointObject> vLocInfo = new HashMap<>();
 		for (String vId : vInfo.keySet()) {
 			PointObject p = new PointObject(vInfo.get(vId));
-			vLocInfo.put(vId, p);
+			vLocInfo.put(venueDict.intern(vId), p);
 		}
 		
 		// making user objects
-		for(String userId : uInfo.keySet()){
+		for(String uId : uInfo.keySet()){
+			String userId = userDict.intern(uId);
 			// parse the location of users 
-			String locInfo = uInfo.get(userId);
+			String locInfo = uInfo.get(uId);
 			PointObject location = new PointObject(locInfo);
 			
 			boolean isKnownHome = true;
@@ -175,95 +254,237 @@ public class Model {
 		HashMap<String, Integer> countMap = Utils.countCks(cksMap);
 
 		areaMap = new HashMap<>();
-		venueMap = Utils.createNeighborsBox(vLocInfo, areaMap, countMap, userOfVenueMap, scale, isAverageLocation);
+		venueMap = Utils.createNeighborsBoxParallel(vLocInfo, areaMap, countMap, userOfVenueMap, scale, isAverageLocation);
+		
+		core = new ModelCore(userMap, venueMap, areaMap, unknownLocUsers);
 	}
 	
+	/**
+	 * open a model saved by {@link #saveResult(String)}. Objects of users, venues and areas are only made when they
+	 * are needed
+	 * @param snapshotFile
+	 * @throws IOException
+	 */
+	public Model(String snapshotFile) throws IOException {
+		this(snapshotFile, false);
+	}
+	
+	/**
+	 * open a model saved by {@link #saveResult(String)}
+	 * @param snapshotFile
+	 * @param isCheckinsMapped	true -> check-ins are mapped from the snapshot instead of being copied to the heap; the
+	 * 							snapshot must not be overwritten while the model is used
+	 * @throws IOException
+	 */
+	public Model(String snapshotFile, boolean isCheckinsMapped) throws IOException {
+		ModelSnapshot snapshot = ModelSnapshot.read(snapshotFile, isCheckinsMapped);
+		this.core = snapshot.getCore();
+		this.isSigmoid = snapshot.isSigmoid();
+		this.modeModel = snapshot.getModeModel();
+		this.isCheckinsOffHeap = isCheckinsMapped;
+	}
 	
 	public Set<String> getUnknownLocUsers() {
+		makeObjects();
 		return unknownLocUsers;
 	}
 	
+	/**
+	 * 
+	 * @param isSparseLLH	true -> log likelihood only visits check-ins of users; false -> visit all pairs of users and venues
+	 */
+	public void setSparseLLH(boolean isSparseLLH) {
+		this.isSparseLLH = isSparseLLH;
+	}
+	
+	/**
+	 * 
+	 * @param scopeOptimizer	{@link ScopeOptimizer#GRADIENT_DESCENT} or {@link ScopeOptimizer#NEWTON}
+	 */
+	public void setScopeOptimizer(int scopeOptimizer) {
+		if (scopeOptimizer != ScopeOptimizer.GRADIENT_DESCENT && scopeOptimizer != ScopeOptimizer.NEWTON)
+			throw new IllegalArgumentException("unknown scope optimizer: " + scopeOptimizer);
+		this.scopeOptimizer = scopeOptimizer;
+	}
+	
+	/**
+	 * 
+	 * @return	number of evaluations of log likelihood of one venue done by scope optimizers since the last reset
+	 */
+	public long getNumLLHEvaluations() {
+		return numLLHEvals.sum();
+	}
+	
+	/**
+	 * 
+	 * @return	number of evaluations of gradient (and second differentiation for Newton method) done by scope optimizers 
+	 * 			since the last reset
+	 */
+	public long getNumGradEvaluations() {
+		return numGradEvals.sum();
+	}
+	
+	public void resetEvaluationCounts() {
+		numLLHEvals.reset();
+		numGradEvals.reset();
+	}
+	
+	/**
+	 * set the number of threads used to compute log likelihood of the whole data and of one venue. With a given number
+	 * of threads, the result is reproducible. Parallel evaluation always only visits check-ins of users. Threads of the
+	 * previous setting are stopped, unless the number of threads does not change
+	 * @param parallelism	number of threads; 0 -> compute on the current thread
+	 */
+	public void setLLHParallelism(int parallelism) {
+		if (parallelism < 0)
+			throw new IllegalArgumentException("parallelism must not be negative: " + parallelism);
+		if (parallelLLH != null) {
+			if (parallelLLH.getParallelism() == parallelism)
+				return;
+			parallelLLH.shutdown();
+		}
+		this.parallelLLH = parallelism == 0 ? null : new ParallelLoglikelihood(parallelism);
+	}
+	
+	/**
+	 * write checkpoints of learning to a file, see {@link Checkpoint}. A checkpoint is written after an iteration when
+	 * the given number of iterations or the given time has passed since the last checkpoint, and when learning stops
+	 * @param fname			file of checkpoints; null -> no checkpoint
+	 * @param iterations	number of iterations between checkpoints; 0 -> not used
+	 * @param seconds		time between checkpoints in seconds; 0 -> not used
+	 */
+	public void setCheckpoint(String fname, int iterations, long seconds) {
+		if (iterations < 0 || seconds < 0)
+			throw new IllegalArgumentException("interval of checkpoints must not be negative");
+		this.checkpointFile = fname;
+		this.checkpointIterations = iterations;
+		this.checkpointMillis = seconds * 1000;
+	}
+	
+	/**
+	 * keep check-ins of users and venues off the heap, so that heap usage and garbage collection do not grow with the
+	 * number of check-ins. See {@link CheckinGraph}
+	 * @param fname	file which check-ins are written to and mapped from; null -> direct memory
+	 * @throws IOException
+	 */
+	public void moveCheckinsOffHeap(String fname) throws IOException {
+		checkNotPartitioned();
+		core.moveCheckinsOffHeap(fname);
+		this.isCheckinsOffHeap = true;
+		this.checkinsFile = fname;
+	}
+	
+	/**
+	 * keep check-ins of users on disk in partitions of users and drop them from memory, so that a model whose check-ins
+	 * do not fit in memory can still be learned. Locations of users stay in memory; each iteration of
+	 * {@link #learnParameter(int)} streams the partitions once to update locations of users and the statistics of
+	 * venues. See {@link UserPartitions}. Objects of the model cannot be made, and check-ins cannot be added or saved,
+	 * until {@link #loadUserPartitions()} is called
+	 * @param dir			directory of partition files
+	 * @param numPartitions	number of partitions; each one is read in memory at once
+	 * @throws IOException
+	 */
+	public void partitionUsers(String dir, int numPartitions) throws IOException {
+		checkNotPartitioned();
+		userPartitions = UserPartitions.write(core, dir, numPartitions);
+		core.dropCheckins();
+		venueStats = null;
+	}
+	
+	/**
+	 * read check-ins of users back from the partitions written by {@link #partitionUsers(String, int)}
+	 * @throws IOException
+	 */
+	public void loadUserPartitions() throws IOException {
+		if (userPartitions == null)
+			return;
+		core.checkins = userPartitions.readGraph(core.getNumVenues());
+		userPartitions = null;
+		if (isCheckinsOffHeap)
+			core.moveCheckinsOffHeap(checkinsFile);
+	}
+	
+	/**
+	 * 
+	 * @throws IllegalStateException	if check-ins of users are kept on disk
+	 */
+	private void checkNotPartitioned() {
+		if (userPartitions != null)
+			throw new IllegalStateException("check-ins of users are on disk; call loadUserPartitions() first");
+	}
+	
 	/**
 	 * 
 	 * @param checkinMode 1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
 	 */
 	public void learnParameter(int checkinMode){
+		learnParameter(checkinMode, 0, calculateLLH());
+	}
+	
+	/**
+	 * continue learning from a checkpoint written by a model built from the same data. Learning goes on exactly as
+	 * if it had not been stopped
+	 * @param fname	file of checkpoint
+	 * @throws IOException
+	 */
+	public void resumeParameter(String fname) throws IOException {
+		Checkpoint checkpoint = Checkpoint.read(fname);
+		checkpoint.restore(core);
+		venueStats = null;
+		System.out.println("resume from iteration " + checkpoint.getIteration() + " LLH:" + checkpoint.getLLH());
+		if (!checkpoint.isConverged())
+			learnParameter(checkpoint.getCheckinMode(), checkpoint.getIteration() + 1, checkpoint.getLLH());
+	}
+	
+	/**
+	 * 
+	 * @param checkinMode	1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 * @param iteration		number of first iteration
+	 * @param prev_llh		log likelihood of current scopes
+	 */
+	private void learnParameter(int checkinMode, int iteration, double prev_llh){
 		boolean conv = false;
-		double prev_llh = calculateLLH();
-		int iteration = 0;
+		int lastCheckpoint = iteration - 1;
+		long lastCheckpointTime = System.currentTimeMillis();
 		
 		System.out.println("init LLH:" + prev_llh);
-		Set<String> allVenues = venueMap.keySet();
-		Set<String> validVenues = new HashSet<>();// only venue with some check-in will be added to this list
-		
-		for (String vId : allVenues) {
-			VenueObject vo = venueMap.get(vId);
-			if (vo.getUserIds() != null) // this venue have some visits from users
-				validVenues.add(vId);
-		}
-
-		Set<String> allAreaId = areaMap.keySet(); 
+		// only venue with some check-in will be added to this list
+		int[] validVenues = IntStream.range(0, core.getNumVenues())
+				.filter(v -> core.checkins.hasUsers(v)) // this venue have some visits from users
+				.toArray();
 		
 		double llh = prev_llh;
+		double[] updatedScope = new double[core.getNumVenues()]; // the new scope of each venue
+		
+		// log likelihood is updated incrementally when scopes change
+		LLHTracker tracker = new LLHTracker(core, getVenueStats(checkinMode), isSigmoid, modeModel);
 		
 		while (!conv) {
-			// update location of users
+			// update location of users. Locations of users and areas are fixed while scopes of venues are optimized
+			// so that sufficient statistics of venues are computed once here
 			updateLocOfUsers(checkinMode);
-//			double llh = calculateLLH();
-//			System.out.println("after update loc of users: " + llh);
-			System.out.println("after update loc of users: " + calculateLLH());
-			
-//			if (Math.abs(llh - prev_llh) < Params.threshold){
-//				break; // convergence
-//			}
-//			
-//			prev_llh = llh;
+			tracker.updateUserLocations(getVenueStats(checkinMode));
+			System.out.println("after update loc of users: " + tracker.getLLH());
 			
 			// update the influence scope of venues
-			Map<String, Double> updatedScope = Collections.synchronizedMap(new HashMap<>()); // the new scope of each venue
-			
 			// step 1: calculate the scope of each venue and then put them to updatedScope
-//			for (String venueId : validVenues) {
-			validVenues.parallelStream().forEach(venueId -> {				
-				VenueObject vo = venueMap.get(venueId);
-				
-				double curScope = vo.getInfluenceScope();
-//				System.out.println("------------");
-				double scope = maximizeScopeOfVenue(venueId, curScope, checkinMode);
-//				System.out.println("------------");
-				updatedScope.put(venueId, scope);
+			Arrays.stream(validVenues).parallel().forEach(v -> {
+				double curScope = core.venueScope[v];
+				updatedScope[v] = maximizeScopeOfVenue(v, curScope, checkinMode);
 			});
-//			}
 
-			llh = intermediateLLH(updatedScope, validVenues, allAreaId);
-			if (llh < prev_llh) { // no increase
+			// step 2: evaluate new values as candidate scopes of venues and areas. 
+			// The log likelihood only recomputes terms of changed venues and areas
+			llh = intermediateLLH(tracker, updatedScope, validVenues, iteration == 0);
+			if (llh < prev_llh) { // no increase, keep the old scopes
+				tracker.reject();
 				conv = true;
+				saveCheckpoint(iteration - 1, prev_llh, checkinMode, true);
 				continue;
 			}
-
-			// step 2: use new value to override old one
-			validVenues.parallelStream().forEach(venueId -> {
-				VenueObject v = venueMap.get(venueId);
-				
-				double scope = updatedScope.get(venueId);
-				v.updateInfluenceScope(scope);
-			});
 			
-			// step 3: update the scope of area
-			allAreaId.parallelStream().forEach(areaId -> {
-				AreaObject a = areaMap.get(areaId);
-				Set<String> venues = a.getSetOfVenueIds();
-				if (venues != null) {
-					double new_scope = 0.0;
-					for (String vId : venues) {
-						double vScope = venueMap.get(vId).getInfluenceScope();
-						new_scope += vScope * vScope;
-					}
-					// scope of area is the sum of scope of all venues inside
-//					new_scope /= (double) venues.size();
-					a.updateScope(Math.sqrt(new_scope));
-				}
-			});
+			// step 3: use new value to override old one
+			tracker.accept();
 
 			System.out.println("after update scope of venues:" + llh);
 			
@@ -273,42 +494,232 @@ public class Model {
 			}
 			
 			prev_llh = llh;
+			
+			long now = System.currentTimeMillis();
+			if (conv || (checkpointIterations > 0 && iteration - lastCheckpoint >= checkpointIterations)
+					|| (checkpointMillis > 0 && now - lastCheckpointTime >= checkpointMillis)) {
+				saveCheckpoint(iteration, llh, checkinMode, conv);
+				lastCheckpoint = iteration;
+				lastCheckpointTime = now;
+			}
 			iteration++;
 		}
 	}
 	
+	/**
+	 * write a checkpoint if checkpoints are enabled. Learning goes on if it cannot be written
+	 * @param iteration		number of the last finished iteration
+	 * @param llh			log likelihood after this iteration
+	 * @param checkinMode
+	 * @param isConverged
+	 */
+	private void saveCheckpoint(int iteration, double llh, int checkinMode, boolean isConverged) {
+		if (checkpointFile == null)
+			return;
+		try {
+			Checkpoint.write(checkpointFile, core, iteration, llh, checkinMode, isConverged);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
 	/**
 	 * @param checkinMode 1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
 	 */
 	public void updateLocOfUsers(int checkinMode) {
-		unknownLocUsers.parallelStream().forEach((uId) -> {
-			UserObject uo = userMap.get(uId);
-			Set<String> venues = uo.getAllVenues();
-
-			double numerator_x = 0.0; 
-			double numerator_y = 0.0;
-			double denominator = 0.0;
-
-			for (String vId : venues) {
-				VenueObject vo = venueMap.get(vId);
-				String areaId = vo.getAreaId();
-				AreaObject ao = areaMap.get(areaId);
-				
-				double numCks = 1.0;
-				if (checkinMode == 1) 
-					numCks = (double) uo.retrieveNumCks(vId);
-				else if (checkinMode == 2) 
-					numCks = Math.log((double) uo.retrieveNumCks(vId));
-				
-//				double weight = ((double) uo.retrieveNumCks(vId)) / (ao.getScope() * ao.getScope());
-				double weight = numCks / (ao.getScope() * ao.getScope());
-				numerator_x += weight * ao.getLocation().getLat();
-				numerator_y += weight * ao.getLocation().getLng();
-				denominator += weight;
+		if (userPartitions != null) {
+			// statistics of venues come with the same pass over the partitions
+			try {
+				venueStats = userPartitions.update(core, checkinMode, true);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return;
+		}
+		Arrays.stream(core.unknownUsers).parallel().forEach(u -> updateLocOfUser(u, checkinMode));
+		venueStats = null;
+	}
+	
+	/**
+	 * move an unknown user to the weighted center of areas of its check-ins
+	 * @param u				index of user
+	 * @param checkinMode	1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 */
+	private void updateLocOfUser(int u, int checkinMode) {
+		if (core.userKnown[u])
+			return;
+		int start = core.checkins.ckStart(u);
+		core.moveToCenterOfAreas(u, core.checkins.ckVenue, core.checkins.ckCount, start, core.checkins.ckEnd(u) - start,
+				checkinMode);
+	}
+	
+	/**
+	 * add new check-ins to a learned model without learning it from scratch. Check-ins are added to users and venues;
+	 * users who are not in the model are added with unknown home locations. Then scopes of venues which have new
+	 * check-ins and of their neighbors, and home locations of unknown users who visit these venues, are optimized again
+	 * for at most {@link Params#maxLocalIter} rounds. Other venues and users do not change and the log likelihood of
+	 * the whole data is not checked; {@link #learnParameter(int)} still learns the whole model again if needed
+	 * @param userIds		user of each check-in
+	 * @param venueIds		venue of each check-in; it must be in the model
+	 * @param counts		number of new check-ins of each pair; pairs may repeat
+	 * @param checkinMode	1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 * @throws IllegalArgumentException	if a venue is not in the model or a number of check-ins is not positive
+	 * @throws UncheckedIOException		if check-ins are kept off the heap and the new ones cannot be written to their file
+	 */
+	public void addCheckins(String[] userIds, String[] venueIds, int[] counts, int checkinMode) {
+		checkNotPartitioned();
+		if (userIds.length != venueIds.length || userIds.length != counts.length)
+			throw new IllegalArgumentException("users, venues and counts must have the same length");
+		int[] users = new int[userIds.length];
+		int[] venues = new int[userIds.length];
+		LinkedHashMap<String, Integer> newUsers = new LinkedHashMap<>();
+		for (int i = 0; i < userIds.length; i++) {
+			venues[i] = core.getVenueIndex(venueIds[i]);
+			if (venues[i] < 0)
+				throw new IllegalArgumentException("unknown venue: " + venueIds[i]);
+			if (counts[i] <= 0)
+				throw new IllegalArgumentException("number of check-ins must be positive: " + counts[i]);
+			users[i] = core.getUserIndex(userIds[i]);
+			if (users[i] < 0) {
+				Integer u = newUsers.get(userIds[i]);
+				if (u == null) {
+					u = core.getNumUsers() + newUsers.size();
+					newUsers.put(userIds[i], u);
+				}
+				users[i] = u;
+			}
+		}
+		
+		// venues do not change, so statistics of venues are kept and only the ones of changed venues are recomputed
+		VenueStats stats = venueStats;
+		core = core.addCheckins(newUsers.keySet().toArray(new String[0]), users, venues, counts);
+		if (isCheckinsOffHeap) {
+			try {
+				core.moveCheckinsOffHeap(checkinsFile);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
+		}
+		
+		// objects are only updated if they are made; otherwise they are made from the new core when needed
+		if (venueMap != null) {
+			for (int i = 0; i < userIds.length; i++) {
+				// canonical Strings of ids are the ones of the core
+				String uId = core.getUserId(users[i]);
+				String vId = core.getVenueId(venues[i]);
+				UserObject uo = userMap.get(uId);
+				if (uo == null) {
+					uo = new UserObject(uId, core.getUserLocation(users[i]), false, new HashMap<>());
+					userMap.put(uId, uo);
+					unknownLocUsers.add(uId);
+				}
+				boolean isNewUser = uo.retrieveNumCks(vId) == 0;
+				uo.addCheckins(vId, counts[i]);
+				venueMap.get(vId).addCheckins(uId, counts[i], isNewUser);
+			}
+		}
+		
+		if (stats == null || stats.getCheckinMode() != checkinMode)
+			stats = new VenueStats(core, checkinMode);
+		venueStats = stats;
+		optimizeLocally(venues, checkinMode, stats);
+	}
+	
+	/**
+	 * optimize scopes of venues with new check-ins and their neighbors, and home locations of unknown users who visit
+	 * them, while everything else is fixed
+	 * @param changedVenues	indices of venues with new check-ins; they may repeat
+	 * @param checkinMode	1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 * @param stats			sufficient statistics of venues; they are refreshed for venues whose users move
+	 */
+	private void optimizeLocally(int[] changedVenues, int checkinMode, VenueStats stats) {
+		int numVenues = core.getNumVenues();
+		boolean[] isLocal = new boolean[numVenues];
+		for (int v : changedVenues) {
+			isLocal[v] = true;
+			for (int k = core.nbrPtr[v]; k < core.nbrPtr[v + 1]; k++)
+				isLocal[core.nbrIdx[k]] = true;
+		}
+		int[] localVenues = IntStream.range(0, numVenues)
+				.filter(v -> isLocal[v] && core.checkins.hasUsers(v)) // only venues with some visits
+				.toArray();
+		
+		boolean[] isMoved = new boolean[core.getNumUsers()];
+		for (int v : localVenues) {
+			for (int e = core.checkins.vuStart(v); e < core.checkins.vuEnd(v); e++) {
+				int u = core.checkins.vuUser(e);
+				isMoved[u] = !core.userKnown[u];
+			}
+		}
+		int[] movedUsers = IntStream.range(0, isMoved.length).filter(u -> isMoved[u]).toArray();
+		
+		// statistics of a venue change when one of its users moves
+		boolean[] isStale = isLocal.clone();
+		for (int u : movedUsers) {
+			for (int e = core.checkins.ckStart(u); e < core.checkins.ckEnd(u); e++)
+				isStale[core.checkins.ckVenue(e)] = true;
+		}
+		int[] staleVenues = IntStream.range(0, numVenues).filter(v -> isStale[v]).toArray();
+		
+		double[] updatedScope = new double[numVenues];
+		for (int iter = 0; iter < Params.maxLocalIter; iter++) {
+			Arrays.stream(movedUsers).parallel().forEach(u -> updateLocOfUser(u, checkinMode));
+			stats.refresh(core, staleVenues);
 			
-			uo.updateLocation(new PointObject(numerator_x / denominator, numerator_y /  denominator));
-		});
+			Arrays.stream(localVenues).parallel().forEach(v -> {
+				updatedScope[v] = maximizeScopeOfVenue(v, core.venueScope[v], checkinMode);
+			});
+			
+			double change = 0.0;
+			for (int v : localVenues) {
+				change = Math.max(change, Math.abs(updatedScope[v] - core.venueScope[v]) / core.venueScope[v]);
+				core.venueScopes.set(v, updatedScope[v]);
+			}
+			// scope of area is the square root of sum of square scopes of all venues inside
+			double[] venueScope = core.venueScopes.candidate();
+			for (int v : localVenues) {
+				int a = core.venueArea[v];
+				if (a < 0 || core.avPtr[a] == core.avPtr[a + 1])
+					continue;
+				double scope = 0.0;
+				for (int k = core.avPtr[a]; k < core.avPtr[a + 1]; k++)
+					scope += venueScope[core.avVenue[k]] * venueScope[core.avVenue[k]];
+				core.areaScopes.set(a, Math.sqrt(scope));
+			}
+			core.acceptScopes();
+			
+			if (change < Params.threshold)
+				break;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param checkinMode	1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 * @return				sufficient statistics of venues for current locations of users
+	 */
+	private synchronized VenueStats getVenueStats(int checkinMode) {
+		if (venueStats == null || venueStats.getCheckinMode() != checkinMode) {
+			if (userPartitions == null) {
+				venueStats = new VenueStats(core, checkinMode);
+			} else {
+				try {
+					venueStats = userPartitions.update(core, checkinMode, false);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+		return venueStats;
+	}
+
+	/**
+	 * log likelihood only uses the sums of actual numbers of check-ins, which are the same for every check-in mode
+	 * @return	statistics of venues of any check-in mode
+	 */
+	private VenueStats getCountStats() {
+		VenueStats stats = venueStats;
+		return stats != null ? stats : getVenueStats(1);
 	}
 
 	/**
@@ -319,42 +730,52 @@ public class Model {
 	 * @return
 	 */
 	public double maximizeScopeOfVenue(String venueId, double sigma_v, int checkinMode) {
-		VenueObject vObj = venueMap.get(venueId);
-		ArrayList<String> neighbors = vObj.getNeighbors();
-		String areaId = vObj.getAreaId();
+		return maximizeScopeOfVenue(core.getVenueIndex(venueId), sigma_v, checkinMode);
+	}
+
+	/**
+	 * 
+	 * @param v			index of venue
+	 * @param sigma_v
+	 * @param checkinMode 1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 * @return
+	 */
+	double maximizeScopeOfVenue(int v, double sigma_v, int checkinMode) {
+		VenueStats stats = getVenueStats(checkinMode);
+		if (scopeOptimizer == ScopeOptimizer.NEWTON)
+			return newtonScopeOfVenue(v, sigma_v, stats);
+		int a = core.venueArea[v];
+		int nStart = core.nbrPtr[v];
+		int nEnd = core.nbrPtr[v + 1];
 
 		// \sigma_v is in all the area of their neighbors. so when we update sigma_v, the influence scope of areas which contain venue v are also
-		// needed to be updated. Key of this map is id of area, venue is the square influence scope which does not contain venue v. 
-		HashMap<String, Double> areaSourdingMap = new HashMap<>();
-		
-//		double sqSigma_v = sigma_v * sigma_v;
-		double sqSigma_v = vObj.getInfluenceScope() * vObj.getInfluenceScope();
-		for (String n : neighbors) {
-			String nAreaId = venueMap.get(n).getAreaId();
-			double currentScope = areaMap.get(nAreaId).getScope();
-			double sqCurrentScope =  currentScope * currentScope;
-			areaSourdingMap.put(n, sqCurrentScope - sqSigma_v);
+		// needed to be updated. Element 0 is for the area of venue v, element k + 1 is for the area of k-th neighbor. Value is the
+		// square influence scope which does not contain venue v. 
+		double[] areaSurrounding = new double[nEnd - nStart + 1];
+		
+		double sqSigma_v = core.venueScope[v] * core.venueScope[v];
+		for (int k = nStart; k < nEnd; k++) {
+			double currentScope = core.areaScope[core.venueArea[core.nbrIdx[k]]];
+			areaSurrounding[k - nStart + 1] = currentScope * currentScope - sqSigma_v;
 		}
-		double tempSqCurrentScope = areaMap.get(areaId).getScope() * areaMap.get(areaId).getScope();
-		areaSourdingMap.put(venueId, tempSqCurrentScope - sqSigma_v);
+		areaSurrounding[0] = core.areaScope[a] * core.areaScope[a] - sqSigma_v;
 		
 		double t = 1.0;
 
 		boolean inner_conv = false;
 		boolean outter_conv = false;
 		
-		double preObj = - t * calculateLLH(venueId, sigma_v) - Math.log(sigma_v);
-//		System.out.println(preObj);
+		double preObj = - t * calculateLLH(v, sigma_v, stats) - Math.log(sigma_v);
 		while (!outter_conv){
 			int iter = 0;
 			double learningRate = 1.0; // it will be decreased using backtracking
 
 			while (!inner_conv){
 				// Step 1: calculate gradient calculation 
-				double grad = grad(venueId, sigma_v, areaSourdingMap, t, checkinMode);
+				double grad = grad(v, sigma_v, areaSurrounding, t, stats);
 				
 				double s = sigma_v - learningRate * grad;
-				double lhs = - t * calculateLLH(venueId, s) - Math.log(s);
+				double lhs = - t * calculateLLH(v, s, stats) - Math.log(s);
 				int inter_iter = 0; // if learning rate goes to far, it creates computational error
 				while ((!Double.isFinite(lhs) || Double.isNaN(lhs)) && inter_iter != 1000){
 					learningRate = Params.beta * learningRate;
@@ -363,7 +784,7 @@ public class Model {
 						inter_iter = 1000;
 						break;
 					}
-					lhs = -t * calculateLLH(venueId, s) - Math.log(s);
+					lhs = -t * calculateLLH(v, s, stats) - Math.log(s);
 					inter_iter++;
 				}
 
@@ -375,7 +796,7 @@ public class Model {
 				while ((!Double.isFinite(lhs) || !Double.isFinite(rhs) || lhs > rhs) && inter_iter != 1000) {
 					learningRate = Params.beta * learningRate;
 					s = sigma_v - learningRate * grad;
-					lhs = -t * calculateLLH(venueId, s) - Math.log(s);
+					lhs = -t * calculateLLH(v, s, stats) - Math.log(s);
 					rhs = preObj - Params.alpha * learningRate * grad * grad;
 					inter_iter++;
 				}
@@ -386,99 +807,127 @@ public class Model {
 				sigma_v = sigma_v - learningRate * grad;
 				
 				// checking the convergence rate
-				double llh = calculateLLH(venueId, sigma_v);
-//				System.out.println(llh);
+				double llh = calculateLLH(v, sigma_v, stats);
 				double obj = - t * llh - Math.log(sigma_v);
-//				System.out.println("pre_obj:" + preObj + " obj:" + obj + " sigma:" + sigma_v + " llh:" + (llh)+ " learningRate:" + learningRate);
 				if (iter > 1 && Math.abs(obj - preObj) < Params.threshold) {
 					inner_conv = true;
 				}
 				preObj = obj;
 				iter++;
 			}
-//			System.out.println("===========");
-//			if (1.0 / t < Params.threshold)
-				outter_conv = true;
-//			else {
-//				t = 2.0 * t;
-//				inner_conv = false; // continue using stochastic gradient descent to find the maximum
-//			}
+			outter_conv = true;
 		}
 		
 		return sigma_v;
 	}
 
+	/**
+	 * maximize log likelihood of venue + log(sigma_v) with safeguarded Newton method on u = log(sigma_v), so that scope
+	 * stays positive. Objective f = -LLH(sigma_v) - log(sigma_v) uses the actual number of check-ins and its analytic first and
+	 * second differentiation. If f is not convex at the current point, the step goes along the gradient. Every step is at most
+	 * {@link Params#maxNewtonStep} and is halved until f decreases enough (Armijo condition).
+	 * @param v			index of venue
+	 * @param sigma_v	initial scope
+	 * @param stats		sufficient statistics of venues
+	 * @return			optimal scope
+	 */
+	private double newtonScopeOfVenue(int v, double sigma_v, VenueStats stats) {
+		double[] diff = new double[2];
+		double u = Math.log(sigma_v);
+		double obj = - calculateLLH(v, sigma_v, stats) - u;
+
+		for (int iter = 0; iter < Params.maxNewtonIter; iter++) {
+			Loglikelihood.diffLLH(core, stats, isSigmoid, v, sigma_v, modeModel, diff);
+			numGradEvals.increment();
+			double d1 = - diff[0] - 1.0 / sigma_v; // df / dsigma
+			double d2 = - diff[1] + 1.0 / (sigma_v * sigma_v); // d2f / dsigma2
+			double g = sigma_v * d1; // df / du
+			double h = sigma_v * sigma_v * d2 + sigma_v * d1; // d2f / du2
+
+			double step = h > 0 ? - g / h : - Math.signum(g) * Params.maxNewtonStep;
+			if (Math.abs(step) > Params.maxNewtonStep)
+				step = Math.signum(step) * Params.maxNewtonStep;
+			if (!Double.isFinite(step) || Math.abs(step) < Params.newtonTolerance)
+				break;
+
+			// backtracking
+			double newObj = Double.NaN;
+			while (Math.abs(step) >= Params.newtonTolerance) {
+				newObj = - calculateLLH(v, Math.exp(u + step), stats) - (u + step);
+				if (Double.isFinite(newObj) && newObj <= obj + 1e-4 * step * g)
+					break;
+				step *= 0.5;
+			}
+			if (Math.abs(step) < Params.newtonTolerance) // no step decreases the objective
+				break;
+
+			u += step;
+			sigma_v = Math.exp(u);
+			obj = newObj;
+		}
+
+		return sigma_v;
+	}
+
 	/**
 	 * 
 	 * @param venueId
 	 * @param sigma_v
-	 * @param areaSurroundingMap
+	 * @param areaSurroundingMap	key is id of venue v or its neighbors, value is square scope of its area without venue v
 	 * @param t
 	 * @param checkinMode 		1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
 	 * @return
 	 */
 	public double grad(String venueId, double sigma_v, HashMap<String, Double> areaSurroundingMap, double t, int checkinMode) {
+		int v = core.getVenueIndex(venueId);
+		int nStart = core.nbrPtr[v];
+		int nEnd = core.nbrPtr[v + 1];
+		double[] areaSurrounding = new double[nEnd - nStart + 1];
+		areaSurrounding[0] = areaSurroundingMap.get(venueId);
+		for (int k = nStart; k < nEnd; k++)
+			areaSurrounding[k - nStart + 1] = areaSurroundingMap.get(core.venueIds[core.nbrIdx[k]]);
+		return grad(v, sigma_v, areaSurrounding, t, getVenueStats(checkinMode));
+	}
+
+	/**
+	 * 
+	 * @param v					index of venue
+	 * @param sigma_v
+	 * @param areaSurrounding	element 0 is square scope of area of venue v without v, element k + 1 is the one of k-th neighbor
+	 * @param t
+	 * @param stats				sufficient statistics of venues whose check-ins are weighted by check-in mode
+	 * @return
+	 */
+	double grad(int v, double sigma_v, double[] areaSurrounding, double t, VenueStats stats) {
+		numGradEvals.increment();
 		double grad = 0.0;
 		
-		VenueObject vObj = venueMap.get(venueId);
-		String areaId = vObj.getAreaId();
-		double w_v = vObj.getTotalCks();
-		ArrayList<String> neighbors = vObj.getNeighbors();
+		double w_v = core.venueTotalCks[v];
+		int nStart = core.nbrPtr[v];
+		int nEnd = core.nbrPtr[v + 1];
 		
-		ArrayList<String> users = vObj.getUserIds();
 		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION) {
-			for (String userId : users) {
-				UserObject uo = userMap.get(userId);
-
-				double w = 1.0;
-				if (checkinMode == 1)
-					w = (double) uo.retrieveNumCks(venueId);
-				else if (checkinMode == 2)
-					w = Math.log((double) uo.retrieveNumCks(venueId));
-
-				double d = Distance.calSqEuDistance(uo.getLocation(), areaMap.get(areaId).getLocation());
-				double sq_sigma_v_prime = areaSurroundingMap.get(venueId) + sigma_v * sigma_v;
-				grad += w * (- sigma_v / sq_sigma_v_prime + sigma_v * d / (sq_sigma_v_prime * sq_sigma_v_prime));
-			}
+			double sq_sigma_v_prime = areaSurrounding[0] + sigma_v * sigma_v;
+			grad += gradAreaTerm(v, sigma_v, sq_sigma_v_prime, stats);
 		}
 		
-		for (String neighbor : neighbors){
-			VenueObject neighborObj = venueMap.get(neighbor);
-			AreaObject neighborAreaObj = areaMap.get(neighborObj.getAreaId());
-			double w_n = neighborObj.getTotalCks();
+		for (int k = nStart; k < nEnd; k++){
+			int n = core.nbrIdx[k];
+			double w_n = core.venueTotalCks[n];
 
 			if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION) {
 				// second term of gradient
-				double sq_sigma_n_prime = areaSurroundingMap.get(neighbor) + sigma_v * sigma_v;
-				ArrayList<String> uOfNeighbors = neighborObj.getUserIds();
-				if (uOfNeighbors == null)
+				if (!core.checkins.hasUsers(n))
 					continue;
-				for (String u : uOfNeighbors) {
-					UserObject uo = userMap.get(u);
-
-					double w_in = 1.0;
-					if (checkinMode == 1)
-						w_in = (double) uo.retrieveNumCks(neighbor);
-					else if (checkinMode == 2)
-						w_in = Math.log((double) uo.retrieveNumCks(neighbor));
-
-					double d = Distance.calSqEuDistance(uo.getLocation(), neighborAreaObj.getLocation());
-					grad += w_in * (- sigma_v / sq_sigma_n_prime + sigma_v * d / (sq_sigma_n_prime * sq_sigma_n_prime));
-				}
+				double sq_sigma_n_prime = areaSurrounding[k - nStart + 1] + sigma_v * sigma_v;
+				grad += gradAreaTerm(n, sigma_v, sq_sigma_n_prime, stats);
 			}
 
 			if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.NEIGHBORHOOD_COMPETITION) {
 				// third term and 4th term of gradient
-				double diff = sigma_v - neighborObj.getInfluenceScope();
-				double p_vn = 0.0;
-				double p_nv = 0.0;
-				if (isSigmoid) { // sigmoid function
-					p_vn = Function.diffLogSigmoidFunction(diff);
-					p_nv = -Function.diffLogSigmoidFunction(-diff);
-				} else { // CDF function
-					p_vn = Function.diffLogCDF(diff);
-					p_nv = -Function.diffLogCDF(-diff);
-				}
+				double diff = sigma_v - core.venueScope[n];
+				double p_vn = FastFunction.diffLogWin(isSigmoid, diff);
+				double p_nv = -FastFunction.diffLogWin(isSigmoid, -diff);
 				grad += w_v * p_vn + w_n * p_nv;
 			}
 		}
@@ -490,53 +939,74 @@ public class Model {
 		return grad;
 	}
 	
+	/**
+	 * gradient of the contribution of check-ins of a venue to the likelihood of its area
+	 * @param v				index of venue
+	 * @param sigma_v		scope of venue which is optimized
+	 * @param sqScope		square scope of area
+	 * @param stats			sufficient statistics of venues whose check-ins are weighted by check-in mode
+	 * @return
+	 */
+	private double gradAreaTerm(int v, double sigma_v, double sqScope, VenueStats stats) {
+		return - stats.sumWMode[v] * sigma_v / sqScope + stats.sumWDMode[v] * sigma_v / (sqScope * sqScope);
+	}
+	
 	public double getInfluenceScope(String vId) {
-		return venueMap.get(vId).getInfluenceScope();
+		return core.venueScope[core.getVenueIndex(vId)];
 	}
 
 	/**
-	 * calculate the intermediate log likelihood of model but the scopes of venues are in a given map
-	 * @param updatedScope	a map that contains the new scopes of venues
-	 * @param validVenues	set of venues which have some check-ins
-	 * @param allAreaId		all ids of areas
+	 * calculate the intermediate log likelihood of model but the scopes of venues are in a given array.
+	 * New scopes are only written to the candidate buffers; scopes of model do not change.
+	 * @param tracker		keeps the log likelihood of model up to date
+	 * @param updatedScope	the new scopes of venues
+	 * @param validVenues	venues which have some check-ins
+	 * @param isAllAreas	true -> recompute scopes of all areas; false -> only areas of valid venues
 	 * @return				log likelihood of model
 	 */
-	private double intermediateLLH(Map<String, Double> updatedScope, Set<String> validVenues, Set<String> allAreaId) {
-		HashMap<String, VenueObject> intermediateVenueMap = new HashMap<>(venueMap);
-		HashMap<String, AreaObject> intermediateAreaMap = new HashMap<>(areaMap);
-
+	private double intermediateLLH(LLHTracker tracker, double[] updatedScope, int[] validVenues, boolean isAllAreas) {
 		// update the scope of venue
-		validVenues.parallelStream().forEach(venueId -> {
-			VenueObject v = intermediateVenueMap.get(venueId);
-
-			double scope = updatedScope.get(venueId);
-			v.updateInfluenceScope(scope);
-		});
-
-		// update the scope of area
-		allAreaId.parallelStream().forEach(areaId -> {
-			AreaObject a = intermediateAreaMap.get(areaId);
-			Set<String> venues = a.getSetOfVenueIds();
-			if (venues != null) {
-				double new_scope = 0.0;
-				for (String vId : venues) {
-					double vScope = intermediateVenueMap.get(vId).getInfluenceScope();
-					new_scope += vScope * vScope;
-				}
-				// scope of area is the sum of scope of all venues inside
-				a.updateScope(Math.sqrt(new_scope));
-			}
-		});
+		for (int v : validVenues)
+			tracker.setVenueScope(v, updatedScope[v]);
 
-		return Loglikelihood.calculateLLH(userMap, intermediateVenueMap, intermediateAreaMap, isSigmoid, modeModel);
+		// scope of area is the square root of sum of square scopes of all venues inside. The initial scopes of areas
+		// are computed differently, so all areas are recomputed the first time
+		if (isAllAreas)
+			tracker.markAllAreas();
+
+		return tracker.getCandidateLLH();
 	}
 
 	public double calculateLLH() {
-		return Loglikelihood.calculateLLH(userMap, venueMap, areaMap, isSigmoid, modeModel);
+		if (userPartitions != null)
+			return Loglikelihood.calculateLLH(core, getCountStats(), isSigmoid, modeModel);
+		if (parallelLLH != null)
+			return parallelLLH.calculateLLH(core, isSigmoid, modeModel);
+		return Loglikelihood.calculateLLH(core, isSigmoid, modeModel, isSparseLLH);
 	}
 	
 	public double calculateLLH(String venueId, double sigma_v) {
-		return Loglikelihood.calculateLLH(userMap, venueMap, areaMap, isSigmoid, venueId, sigma_v, modeModel);
+		return calculateLLH(core.getVenueIndex(venueId), sigma_v);
+	}
+	
+	double calculateLLH(int v, double sigma_v) {
+		if (userPartitions != null)
+			return Loglikelihood.calculateLLH(core, getCountStats(), isSigmoid, v, sigma_v, modeModel);
+		if (parallelLLH != null)
+			return parallelLLH.calculateLLH(core, isSigmoid, v, sigma_v, modeModel);
+		return Loglikelihood.calculateLLH(core, isSigmoid, v, sigma_v, modeModel);
+	}
+	
+	/**
+	 * log likelihood of one venue computed from sufficient statistics of venues
+	 * @param v
+	 * @param sigma_v
+	 * @param stats
+	 * @return
+	 */
+	private double calculateLLH(int v, double sigma_v, VenueStats stats) {
+		numLLHEvals.increment();
+		return Loglikelihood.calculateLLH(core, stats, isSigmoid, v, sigma_v, modeModel);
 	}
 	
 	/**
@@ -551,9 +1021,8 @@ public class Model {
 
 		try {
 		    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(userLocFname), "utf-8"));
-		    for (String uId : unknownLocUsers) {
-		    	PointObject uo = userMap.get(uId).getLocation();
-		    	writer.write(uId + "," + uo.getLat() + "," + uo.getLng() + "\n");
+		    for (int u : core.unknownUsers) {
+		    	writer.write(core.userIds[u] + "," + core.userLat[u] + "," + core.userLng[u] + "\n");
 		    }
 		} catch (IOException ex) {
 		  // report
@@ -566,9 +1035,8 @@ public class Model {
 
 		try {
 		    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(venueScopeFname), "utf-8"));
-		    for (String vId : venueMap.keySet()) {
-		    	double scope = venueMap.get(vId).getInfluenceScope();
-		    	writer.write(vId + "," + scope + "\n");
+		    for (int v = 0; v < core.getNumVenues(); v++) {
+		    	writer.write(core.venueIds[v] + "," + core.venueScope[v] + "\n");
 		    }
 		} catch (IOException ex) {
 		  // report
@@ -578,25 +1046,24 @@ public class Model {
 	}
 	
 	public void printInfluenceScope() {
-		for (VenueObject v : venueMap.values()) {
-			System.out.println("venue id:\t" + v.getId() + "\tinfluence scope:" + v.getInfluenceScope());
+		// ids are only translated from indices when they are written
+		for (int v = 0; v < core.getNumVenues(); v++) {
+			System.out.println("venue id:\t" + core.getVenueId(v) + "\tinfluence scope:" + core.venueScope[v]);
 		}
 	}
 	
 	public void printInfluenceScope(String fname) throws UnsupportedEncodingException, FileNotFoundException, IOException {
 		ArrayList<String> result = new ArrayList<>();
-		for (VenueObject v : venueMap.values()) {
-			result.add(v.getId() + "," + v.getInfluenceScope());
+		for (int v = 0; v < core.getNumVenues(); v++) {
+			result.add(core.getVenueId(v) + "," + core.venueScope[v]);
 		}
 		Utils.writeFile(result, fname);
 	}
 	
 	public void printInfScopeVenueArea(String fname) throws UnsupportedEncodingException, FileNotFoundException, IOException {
 		ArrayList<String> result = new ArrayList<>();
-		for (VenueObject v : venueMap.values()) {
-			String aId = v.getAreaId();
-			AreaObject aObj = areaMap.get(aId);
-			result.add(v.getId() + "," + v.getInfluenceScope() + "," + aObj.getScope());
+		for (int v = 0; v < core.getNumVenues(); v++) {
+			result.add(core.getVenueId(v) + "," + core.venueScope[v] + "," + core.areaScope[core.venueArea[v]]);
 		}
 		Utils.writeFile(result, fname);
 	}
@@ -607,70 +1074,52 @@ public class Model {
 	 * @return
 	 */
 	public PointObject getUserLoc(String userId) {
-		return userMap.get(userId).getLocation();
+		return core.getUserLocation(core.getUserIndex(userId));
 	}
 	
 	/**
-	 * save all result for later use in JSON format
+	 * save the whole model, including current scopes and user locations, in a binary snapshot which can be opened
+	 * again by {@link #Model(String)}. See {@link ModelSnapshot} for the format
 	 * @param fname filename
 	 * @throws IOException 
-	 * @throws FileNotFoundException 
-	 * @throws UnsupportedEncodingException 
-	 */
-	public void saveResult(String fname) throws UnsupportedEncodingException, FileNotFoundException, IOException {		
-		// save area info
-		ArrayList<String> aString = new ArrayList<>();
-		for (AreaObject ao : areaMap.values()) {
-			String id = ao.getId();
-			String scope = String.valueOf(ao.getScope());
-			PointObject loc = ao.getLocation();
-			String lat = String.valueOf(loc.getLat());
-			String lng = String.valueOf(loc.getLng());
-//			sb.append("\"" + id + "\" : { \"scope\":" + scope +  ",\"lat\":" + lat + ", \"lng\" :" + lng + "}");
-			aString.add(id + "," + scope +  "," + lat + "," + lng);
-		}
-		Utils.writeFile(aString, fname + "_area");		
-		
-		// save venue scope, neighbors and area which it belong to
-		ArrayList<String> vString = new ArrayList<>();
-		for (VenueObject vo : venueMap.values()) {			
-			String id = vo.getId();
-			ArrayList<String> neighbors = vo.getNeighbors();
-			String aId = vo.getAreaId();
-			String scope = String.valueOf(vo.getInfluenceScope());
-//			sb.append("\"").append(id).append("\" : { \"aId\" :").append(aId).append(", \"scope\":").append(scope)
-//				.append(", \"neighbors\":[");
-			vString.add(id + "," + aId + "," + scope );
-			StringBuffer sb = new StringBuffer();
-			boolean isB = true;
-			for (String neighbor : neighbors) {
-				if(isB) isB = false;
-				else sb.append(",");
-				sb.append(neighbor);
-			}
-			vString.add(sb.toString());
-		}
-		Utils.writeFile(vString, fname + "_venue");
-		
-		// save user location
-//		ArrayList<String> uString = new ArrayList<>();
-//		for (UserObject uo : userMap.values()) {
-//			String id = uo.getId();
-//			PointObject home = uo.getLocation();
-//			String lat = String.valueOf(home.getLat());
-//			String lng = String.valueOf(home.getLng());
-//			sb.append("\"" + id + "\" : { \"lat\":" + lat + ", \"lng\" :" + lng + "}");
-//		}
-//		sb.append("}");
-//		result.add(sb.toString());
-//		Utils.writeFile(result, fname);
+	 */
+	public void saveResult(String fname) throws IOException {
+		checkNotPartitioned();
+		ModelSnapshot.write(fname, core, isSigmoid, modeModel);
 	}
 
 	public VenueObject getVenueObj(String vId) {
-		return this.venueMap.get(vId);
+		makeObjects();
+		VenueObject vo = this.venueMap.get(vId);
+		if (vo != null)
+			vo.updateInfluenceScope(core.venueScope[core.getVenueIndex(vId)]);
+		return vo;
 	}
 
 	public AreaObject getAreaObj(String aId) {
-		return this.areaMap.get(aId);
+		makeObjects();
+		AreaObject ao = this.areaMap.get(aId);
+		if (ao != null)
+			ao.updateScope(core.areaScope[core.getAreaIndex(aId)]);
+		return ao;
+	}
+	
+	/**
+	 * make the venue, area and user objects from the core if the model is opened from a snapshot; nothing is done if
+	 * they are already made
+	 */
+	private synchronized void makeObjects() {
+		if (venueMap != null)
+			return;
+		checkNotPartitioned();
+		HashMap<String, UserObject> users = new HashMap<>();
+		HashMap<String, VenueObject> venues = new HashMap<>();
+		HashMap<String, AreaObject> areas = new HashMap<>();
+		Set<String> unknown = new HashSet<>();
+		core.buildObjects(users, venues, areas, unknown);
+		userMap = users;
+		areaMap = areas;
+		unknownLocUsers = unknown;
+		venueMap = venues;
 	}
 }
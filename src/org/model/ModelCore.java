@@ -0,0 +1,625 @@
+package org.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.object.AreaObject;
+import org.object.CheckinList;
+import org.object.PointObject;
+import org.object.UserObject;
+import org.object.VenueObject;
+import org.utils.BatchKernels;
+import org.utils.IdDictionary;
+import org.utils.IntColumn;
+
+/**
+ * Compact, integer indexed representation of the model. Users, venues and areas are mapped to dense
+ * ints once when the core is built and every training loop works on the primitive arrays below.
+ * Relations (neighbors of venue, check-ins of user, users of venue, venues of area) are stored in
+ * CSR layout: the entries of row i are in [ptr[i], ptr[i + 1]).
+ *
+ * Arrays are package-private so that {@link Model} and {@link Loglikelihood} can read them directly.
+ * @author tndoan
+ *
+ */
+public class ModelCore {
+
+	/**
+	 * id of user, venue and area for each index
+	 */
+	final String[] userIds;
+	final String[] venueIds;
+	final String[] areaIds;
+
+	/**
+	 * index of each id of user, venue or area. Strings in the id arrays above are the canonical ones of the dictionaries
+	 */
+	final IdDictionary userIndex;
+	final IdDictionary venueIndex;
+	final IdDictionary areaIndex;
+
+	/**
+	 * influence scope of each venue. It is the current buffer of {@link #venueScopes}
+	 */
+	double[] venueScope;
+
+	/**
+	 * current and candidate scopes of venues and areas
+	 */
+	final BufferedArray venueScopes;
+	final BufferedArray areaScopes;
+
+	/**
+	 * location of each venue
+	 */
+	final double[] venueLat;
+	final double[] venueLng;
+
+	/**
+	 * index of area that venue belongs to; -1 if venue has no area
+	 */
+	final int[] venueArea;
+
+	/**
+	 * total number of check-ins of each venue
+	 */
+	final int[] venueTotalCks;
+
+	/**
+	 * neighbors of venues in CSR layout
+	 */
+	final int[] nbrPtr;
+	final int[] nbrIdx;
+
+	/**
+	 * scope and location of area. Scope is the current buffer of {@link #areaScopes}
+	 */
+	double[] areaScope;
+	final double[] areaLat;
+	final double[] areaLng;
+
+	/**
+	 * venues inside areas in CSR layout
+	 */
+	final int[] avPtr;
+	final int[] avVenue;
+
+	/**
+	 * home location of users
+	 */
+	final double[] userLat;
+	final double[] userLng;
+	final boolean[] userKnown;
+
+	/**
+	 * check-ins of users and users of venues in CSR layout, with the number of check-ins of each pair. They are on the
+	 * heap unless they are moved off the heap by {@link #moveCheckinsOffHeap(String)}
+	 */
+	CheckinGraph checkins;
+
+	/**
+	 * index of users whose home locations are unknown
+	 */
+	final int[] unknownUsers;
+
+	/**
+	 * build the core from the object maps. Index of users, venues and areas follows the iteration order of the maps.
+	 * @param userMap
+	 * @param venueMap
+	 * @param areaMap
+	 * @param unknownLocUsers
+	 */
+	public ModelCore(HashMap<String, UserObject> userMap, HashMap<String, VenueObject> venueMap,
+			HashMap<String, AreaObject> areaMap, Set<String> unknownLocUsers) {
+		userIds = userMap.keySet().toArray(new String[0]);
+		venueIds = venueMap.keySet().toArray(new String[0]);
+		areaIds = areaMap.keySet().toArray(new String[0]);
+		userIndex = new IdDictionary(userIds);
+		venueIndex = new IdDictionary(venueIds);
+		areaIndex = new IdDictionary(areaIds);
+
+		int numUsers = userIds.length;
+		int numVenues = venueIds.length;
+		int numAreas = areaIds.length;
+
+		// areas
+		areaScope = new double[numAreas];
+		areaLat = new double[numAreas];
+		areaLng = new double[numAreas];
+		avPtr = new int[numAreas + 1];
+		for (int a = 0; a < numAreas; a++) {
+			AreaObject ao = areaMap.get(areaIds[a]);
+			areaScope[a] = ao.getScope();
+			areaLat[a] = ao.getLocation().getLat();
+			areaLng[a] = ao.getLocation().getLng();
+			Set<String> venues = ao.getSetOfVenueIds();
+			avPtr[a + 1] = avPtr[a] + (venues == null ? 0 : venues.size());
+		}
+		avVenue = new int[avPtr[numAreas]];
+		int pos = 0;
+		for (int a = 0; a < numAreas; a++) {
+			Set<String> venues = areaMap.get(areaIds[a]).getSetOfVenueIds();
+			if (venues != null) {
+				for (String vId : venues) {
+					int v = venueIndex.indexOf(vId);
+					if (v >= 0)
+						avVenue[pos++] = v;
+				}
+			}
+			avPtr[a + 1] = pos;
+		}
+
+		// users
+		userLat = new double[numUsers];
+		userLng = new double[numUsers];
+		userKnown = new boolean[numUsers];
+		int[] ckPtr = new int[numUsers + 1];
+		int numCheckins = 0;
+		for (UserObject uo : userMap.values())
+			numCheckins += uo.getCheckins().size();
+		int[] ckV = new int[numCheckins];
+		int[] ckC = new int[numCheckins];
+		pos = 0;
+		for (int u = 0; u < numUsers; u++) {
+			UserObject uo = userMap.get(userIds[u]);
+			userLat[u] = uo.getLocation().getLat();
+			userLng[u] = uo.getLocation().getLng();
+			userKnown[u] = uo.isKnownLocation();
+
+			// venues of user are sorted by index so that lookups can be done by binary search or merge
+			int start = pos;
+			CheckinList checkins = uo.getCheckins();
+			for (int i = 0; i < checkins.size(); i++) {
+				int v = venueIndex.indexOf(checkins.getVenueId(i));
+				if (v >= 0) // check-ins in unknown venues are ignored
+					ckV[pos++] = v;
+			}
+			Arrays.sort(ckV, start, pos);
+			for (int i = start; i < pos; i++)
+				ckC[i] = uo.retrieveNumCks(venueIds[ckV[i]]);
+			ckPtr[u + 1] = pos;
+		}
+		int[] ckVenue = Arrays.copyOf(ckV, pos);
+		int[] ckCount = Arrays.copyOf(ckC, pos);
+
+		int[] unknown = new int[unknownLocUsers.size()];
+		int numUnknown = 0;
+		for (String uId : unknownLocUsers) {
+			int u = userIndex.indexOf(uId);
+			if (u >= 0)
+				unknown[numUnknown++] = u;
+		}
+		unknownUsers = Arrays.copyOf(unknown, numUnknown);
+
+		// venues
+		venueScope = new double[numVenues];
+		venueLat = new double[numVenues];
+		venueLng = new double[numVenues];
+		venueArea = new int[numVenues];
+		venueTotalCks = new int[numVenues];
+		nbrPtr = new int[numVenues + 1];
+		int[] vuPtr = new int[numVenues + 1];
+		for (int v = 0; v < numVenues; v++) {
+			VenueObject vo = venueMap.get(venueIds[v]);
+			ArrayList<String> neighbors = vo.getNeighbors();
+			ArrayList<String> users = vo.getUserIds();
+			nbrPtr[v + 1] = nbrPtr[v] + (neighbors == null ? 0 : neighbors.size());
+			vuPtr[v + 1] = vuPtr[v] + (users == null ? 0 : users.size());
+		}
+		nbrIdx = new int[nbrPtr[numVenues]];
+		int[] vuU = new int[vuPtr[numVenues]];
+		int[] vuC = new int[vuPtr[numVenues]];
+		int nPos = 0;
+		pos = 0;
+		for (int v = 0; v < numVenues; v++) {
+			VenueObject vo = venueMap.get(venueIds[v]);
+			venueScope[v] = vo.getInfluenceScope();
+			venueLat[v] = vo.getLocation().getLat();
+			venueLng[v] = vo.getLocation().getLng();
+			venueTotalCks[v] = vo.getTotalCks();
+			venueArea[v] = vo.getAreaId() == null ? -1 : areaIndex.indexOf(vo.getAreaId());
+
+			ArrayList<String> neighbors = vo.getNeighbors();
+			if (neighbors != null) {
+				for (String nId : neighbors)
+					nbrIdx[nPos++] = venueIndex.indexOf(nId);
+			}
+
+			ArrayList<String> users = vo.getUserIds();
+			if (users != null) {
+				for (String uId : users) {
+					int u = userIndex.indexOf(uId);
+					if (u < 0)
+						continue;
+					vuU[pos] = u;
+					vuC[pos] = userMap.get(uId).retrieveNumCks(venueIds[v]);
+					pos++;
+				}
+			}
+			vuPtr[v + 1] = pos;
+		}
+		checkins = new CheckinGraph(ckPtr, ckVenue, ckCount, vuPtr, Arrays.copyOf(vuU, pos), Arrays.copyOf(vuC, pos));
+
+		venueScopes = new BufferedArray(venueScope);
+		areaScopes = new BufferedArray(areaScope);
+	}
+
+	/**
+	 * core made of arrays which are already built, e.g. read from a snapshot. Arrays are used, not copied
+	 */
+	ModelCore(String[] userIds, String[] venueIds, String[] areaIds, double[] userLat, double[] userLng,
+			boolean[] userKnown, CheckinGraph checkins, int[] unknownUsers, double[] venueLat, double[] venueLng,
+			double[] venueScope, int[] venueArea, int[] venueTotalCks, int[] nbrPtr, int[] nbrIdx, double[] areaLat,
+			double[] areaLng, double[] areaScope, int[] avPtr, int[] avVenue) {
+		this.userIds = userIds;
+		this.venueIds = venueIds;
+		this.areaIds = areaIds;
+		this.userIndex = new IdDictionary(userIds);
+		this.venueIndex = new IdDictionary(venueIds);
+		this.areaIndex = new IdDictionary(areaIds);
+		this.userLat = userLat;
+		this.userLng = userLng;
+		this.userKnown = userKnown;
+		this.checkins = checkins;
+		this.unknownUsers = unknownUsers;
+		this.venueLat = venueLat;
+		this.venueLng = venueLng;
+		this.venueScope = venueScope;
+		this.venueArea = venueArea;
+		this.venueTotalCks = venueTotalCks;
+		this.nbrPtr = nbrPtr;
+		this.nbrIdx = nbrIdx;
+		this.areaLat = areaLat;
+		this.areaLng = areaLng;
+		this.areaScope = areaScope;
+		this.avPtr = avPtr;
+		this.avVenue = avVenue;
+		this.venueScopes = new BufferedArray(venueScope);
+		this.areaScopes = new BufferedArray(areaScope);
+	}
+
+	/**
+	 * core with new check-ins added to this one. Indices of users and venues do not change; new users get the next
+	 * indices in the given order, their home locations are unknown and start at the center of mass of their check-ins.
+	 * Current scopes are kept and arrays which do not change are shared with this core, so this core must not be used
+	 * any more. Check-ins of the new core are on the heap
+	 * @param newUserIds	ids of users who are not in this core
+	 * @param users			index of user of each check-in, new users follow the existing ones
+	 * @param venues		index of venue of each check-in
+	 * @param counts		number of new check-ins of each pair; pairs may repeat
+	 * @return
+	 */
+	ModelCore addCheckins(String[] newUserIds, int[] users, int[] venues, int[] counts) {
+		int oldUsers = userIds.length;
+		int numUsers = oldUsers + newUserIds.length;
+		int numVenues = venueIds.length;
+
+		// sort check-ins by user, then venue, and sum repeated pairs
+		Integer[] order = new Integer[users.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, (i, j) -> users[i] != users[j] ? Integer.compare(users[i], users[j])
+				: Integer.compare(venues[i], venues[j]));
+		int[] dUser = new int[order.length];
+		int[] dVenue = new int[order.length];
+		int[] dCount = new int[order.length];
+		int numDeltas = 0;
+		for (int i : order) {
+			if (numDeltas > 0 && dUser[numDeltas - 1] == users[i] && dVenue[numDeltas - 1] == venues[i]) {
+				dCount[numDeltas - 1] += counts[i];
+				continue;
+			}
+			dUser[numDeltas] = users[i];
+			dVenue[numDeltas] = venues[i];
+			dCount[numDeltas] = counts[i];
+			numDeltas++;
+		}
+
+		// check-ins of users: merge the sorted row of each user with its sorted new check-ins
+		int[] newCkPtr = new int[numUsers + 1];
+		int[] newCkVenue = new int[checkins.getNumEdges() + numDeltas];
+		int[] newCkCount = new int[checkins.getNumEdges() + numDeltas];
+		boolean[] isNewPair = new boolean[numDeltas];
+		int[] newPairs = new int[numVenues];
+		int pos = 0, d = 0;
+		for (int u = 0; u < numUsers; u++) {
+			int e = u < oldUsers ? checkins.ckStart(u) : 0;
+			int end = u < oldUsers ? checkins.ckEnd(u) : 0;
+			while (e < end || (d < numDeltas && dUser[d] == u)) {
+				boolean isDelta = d < numDeltas && dUser[d] == u;
+				if (e < end && (!isDelta || checkins.ckVenue(e) < dVenue[d])) {
+					newCkVenue[pos] = checkins.ckVenue(e);
+					newCkCount[pos++] = checkins.ckCount(e++);
+				} else if (e < end && checkins.ckVenue(e) == dVenue[d]) {
+					newCkVenue[pos] = checkins.ckVenue(e);
+					newCkCount[pos++] = checkins.ckCount(e++) + dCount[d++];
+				} else {
+					isNewPair[d] = true;
+					newPairs[dVenue[d]]++;
+					newCkVenue[pos] = dVenue[d];
+					newCkCount[pos++] = dCount[d++];
+				}
+			}
+			newCkPtr[u + 1] = pos;
+		}
+
+		// users of venues: counts of existing pairs are updated, new pairs are appended to the row
+		int[] newVuPtr = new int[numVenues + 1];
+		for (int v = 0; v < numVenues; v++)
+			newVuPtr[v + 1] = newVuPtr[v] + (checkins.vuEnd(v) - checkins.vuStart(v)) + newPairs[v];
+		int[] newVuUser = new int[newVuPtr[numVenues]];
+		int[] newVuCount = new int[newVuPtr[numVenues]];
+		int[] fill = new int[numVenues];
+		for (int v = 0; v < numVenues; v++) {
+			int len = checkins.vuEnd(v) - checkins.vuStart(v);
+			checkins.vuUser.get(checkins.vuStart(v), newVuUser, newVuPtr[v], len);
+			checkins.vuCount.get(checkins.vuStart(v), newVuCount, newVuPtr[v], len);
+			fill[v] = newVuPtr[v] + len;
+		}
+		int[] newTotalCks = venueTotalCks.clone();
+		for (d = 0; d < numDeltas; d++) {
+			int v = dVenue[d];
+			newTotalCks[v] += dCount[d];
+			if (isNewPair[d]) {
+				newVuUser[fill[v]] = dUser[d];
+				newVuCount[fill[v]++] = dCount[d];
+				continue;
+			}
+			for (int e = newVuPtr[v]; e < fill[v]; e++) {
+				if (newVuUser[e] == dUser[d]) {
+					newVuCount[e] += dCount[d];
+					break;
+				}
+			}
+		}
+
+		// new users
+		String[] newIds = Arrays.copyOf(userIds, numUsers);
+		System.arraycopy(newUserIds, 0, newIds, oldUsers, newUserIds.length);
+		double[] newLat = Arrays.copyOf(userLat, numUsers);
+		double[] newLng = Arrays.copyOf(userLng, numUsers);
+		boolean[] newKnown = Arrays.copyOf(userKnown, numUsers);
+		int[] newUnknown = Arrays.copyOf(unknownUsers, unknownUsers.length + newUserIds.length);
+		for (int u = oldUsers; u < numUsers; u++) {
+			double lat = 0.0, lng = 0.0, total = 0.0;
+			for (int e = newCkPtr[u]; e < newCkPtr[u + 1]; e++) {
+				lat += venueLat[newCkVenue[e]] * newCkCount[e];
+				lng += venueLng[newCkVenue[e]] * newCkCount[e];
+				total += newCkCount[e];
+			}
+			newLat[u] = lat / total;
+			newLng[u] = lng / total;
+			newUnknown[unknownUsers.length + u - oldUsers] = u;
+		}
+
+		CheckinGraph newCheckins = new CheckinGraph(newCkPtr, Arrays.copyOf(newCkVenue, pos),
+				Arrays.copyOf(newCkCount, pos), newVuPtr, newVuUser, newVuCount);
+		return new ModelCore(newIds, venueIds, areaIds, newLat, newLng, newKnown, newCheckins, newUnknown, venueLat,
+				venueLng, venueScope, venueArea, newTotalCks, nbrPtr, nbrIdx, areaLat, areaLng, areaScope, avPtr, avVenue);
+	}
+
+	/**
+	 * move check-ins off the heap, so that the garbage collector does not scan them
+	 * @param fname	file which check-ins are written to and mapped from; null -> direct memory
+	 * @throws IOException
+	 */
+	void moveCheckinsOffHeap(String fname) throws IOException {
+		checkins = fname == null ? checkins.toDirect() : checkins.toFile(fname);
+	}
+
+	/**
+	 * drop check-ins of users and users of venues, e.g. when they are kept on disk by {@link UserPartitions}. Only the
+	 * number of users of each venue is kept, so {@link CheckinGraph#hasUsers(int)} still works
+	 */
+	void dropCheckins() {
+		int[] vuPtr = new int[venueIds.length + 1];
+		checkins.vuPtr.get(0, vuPtr, 0, vuPtr.length);
+		checkins = new CheckinGraph(new int[userIds.length + 1], new int[0], new int[0], vuPtr, new int[0], new int[0]);
+	}
+
+	/**
+	 * overwrite the current scopes and locations of users, e.g. from a checkpoint. Candidate scopes are discarded
+	 * @param venueScope
+	 * @param areaScope
+	 * @param userLat
+	 * @param userLng
+	 */
+	void restoreState(double[] venueScope, double[] areaScope, double[] userLat, double[] userLng) {
+		System.arraycopy(venueScope, 0, this.venueScope, 0, venueScope.length);
+		System.arraycopy(areaScope, 0, this.areaScope, 0, areaScope.length);
+		System.arraycopy(userLat, 0, this.userLat, 0, userLat.length);
+		System.arraycopy(userLng, 0, this.userLng, 0, userLng.length);
+		venueScopes.reset();
+		areaScopes.reset();
+	}
+
+	/**
+	 * candidate scopes of venues and areas become the current ones
+	 */
+	void acceptScopes() {
+		venueScopes.accept();
+		areaScopes.accept();
+		venueScope = venueScopes.current();
+		areaScope = areaScopes.current();
+	}
+
+	/**
+	 * discard candidate scopes of venues and areas
+	 */
+	void rejectScopes() {
+		venueScopes.reject();
+		areaScopes.reject();
+	}
+
+	/**
+	 * move a user to the center of areas of its check-ins, weighted by weight of check-ins / square scope of area
+	 * @param u				index of user
+	 * @param ckVenue		venues of check-ins
+	 * @param ckCount		number of check-ins
+	 * @param start			first check-in of user
+	 * @param n				number of check-ins of user
+	 * @param checkinMode	1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 */
+	void moveToCenterOfAreas(int u, IntColumn ckVenue, IntColumn ckCount, int start, int n, int checkinMode) {
+		// areas of check-ins of the user form one block
+		BatchKernels.Block block = BatchKernels.block(n);
+		for (int i = 0; i < n; i++) {
+			int a = venueArea[ckVenue.get(start + i)];
+			double scope = areaScope[a];
+			block.lat[i] = areaLat[a];
+			block.lng[i] = areaLng[a];
+			block.w[i] = weight(ckCount.get(start + i), checkinMode) / (scope * scope);
+		}
+		double denominator = BatchKernels.sum(block.w, n);
+		userLat[u] = BatchKernels.dot(block.w, block.lat, n) / denominator;
+		userLng[u] = BatchKernels.dot(block.w, block.lng, n) / denominator;
+	}
+
+	/**
+	 * LOG_COUNTS[k] = log(k). Most users have few check-ins in a venue, so weights of check-in mode 2 are looked up
+	 * instead of computing log on every pass over check-ins
+	 */
+	private static final double[] LOG_COUNTS = new double[1024];
+	static {
+		for (int k = 0; k < LOG_COUNTS.length; k++)
+			LOG_COUNTS[k] = Math.log((double) k);
+	}
+
+	/**
+	 * weight of check-ins of a user in a venue
+	 * @param numCks		number of check-ins
+	 * @param checkinMode	1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 * @return
+	 */
+	static double weight(int numCks, int checkinMode) {
+		if (checkinMode == 1)
+			return (double) numCks;
+		else if (checkinMode == 2)
+			return numCks < LOG_COUNTS.length ? LOG_COUNTS[numCks] : Math.log((double) numCks);
+		return 1.0;
+	}
+
+	/**
+	 * get number of check-ins that user has done in venue. Binary search over check-ins of user
+	 * @param u	index of user
+	 * @param v	index of venue
+	 * @return	number of check-ins; 0 if user has never visited the venue
+	 */
+	public int numCks(int u, int v) {
+		return checkins.numCks(u, v);
+	}
+
+	public int getNumUsers() {
+		return userIds.length;
+	}
+
+	public int getNumVenues() {
+		return venueIds.length;
+	}
+
+	public int getNumAreas() {
+		return areaIds.length;
+	}
+
+	/**
+	 *
+	 * @param vId	id of venue
+	 * @return		index of venue; -1 if venue is not in the model
+	 */
+	public int getVenueIndex(String vId) {
+		return venueIndex.indexOf(vId);
+	}
+
+	/**
+	 *
+	 * @param uId	id of user
+	 * @return		index of user; -1 if user is not in the model
+	 */
+	public int getUserIndex(String uId) {
+		return userIndex.indexOf(uId);
+	}
+
+	/**
+	 *
+	 * @param aId	id of area
+	 * @return		index of area; -1 if area is not in the model
+	 */
+	public int getAreaIndex(String aId) {
+		return areaIndex.indexOf(aId);
+	}
+
+	public String getVenueId(int v) {
+		return venueIds[v];
+	}
+
+	public String getUserId(int u) {
+		return userIds[u];
+	}
+
+	public String getAreaId(int a) {
+		return areaIds[a];
+	}
+
+	public double getVenueScope(int v) {
+		return venueScope[v];
+	}
+
+	public double getAreaScope(int a) {
+		return areaScope[a];
+	}
+
+	public PointObject getUserLocation(int u) {
+		return new PointObject(userLat[u], userLng[u]);
+	}
+
+	/**
+	 * make user, venue and area objects with the current scopes and user locations. Empty neighbor and user lists of
+	 * venues are null, as made by {@link org.utils.Utils#createNeighborsBox}
+	 * @param userMap			filled with users
+	 * @param venueMap			filled with venues
+	 * @param areaMap			filled with areas
+	 * @param unknownLocUsers	filled with ids of users whose home locations are unknown
+	 */
+	public void buildObjects(HashMap<String, UserObject> userMap, HashMap<String, VenueObject> venueMap,
+			HashMap<String, AreaObject> areaMap, Set<String> unknownLocUsers) {
+		for (int u = 0; u < userIds.length; u++) {
+			HashMap<String, Integer> checkinMap = new HashMap<>();
+			for (int e = checkins.ckStart(u); e < checkins.ckEnd(u); e++)
+				checkinMap.put(venueIds[checkins.ckVenue(e)], checkins.ckCount(e));
+			userMap.put(userIds[u], new UserObject(userIds[u], getUserLocation(u), userKnown[u], checkinMap));
+		}
+		for (int u : unknownUsers)
+			unknownLocUsers.add(userIds[u]);
+
+		for (int v = 0; v < venueIds.length; v++) {
+			ArrayList<String> neighbors = null;
+			if (nbrPtr[v] != nbrPtr[v + 1]) {
+				neighbors = new ArrayList<>(nbrPtr[v + 1] - nbrPtr[v]);
+				for (int k = nbrPtr[v]; k < nbrPtr[v + 1]; k++)
+					neighbors.add(venueIds[nbrIdx[k]]);
+			}
+			ArrayList<String> users = null;
+			if (checkins.hasUsers(v)) {
+				users = new ArrayList<>(checkins.vuEnd(v) - checkins.vuStart(v));
+				for (int e = checkins.vuStart(v); e < checkins.vuEnd(v); e++)
+					users.add(userIds[checkins.vuUser(e)]);
+			}
+			VenueObject vo = new VenueObject(venueIds[v], venueTotalCks[v], new PointObject(venueLat[v], venueLng[v]),
+					neighbors, users, venueScope[v]);
+			if (venueArea[v] >= 0)
+				vo.setAreaId(areaIds[venueArea[v]]);
+			venueMap.put(venueIds[v], vo);
+		}
+
+		for (int a = 0; a < areaIds.length; a++) {
+			Set<String> venues = new HashSet<>();
+			for (int k = avPtr[a]; k < avPtr[a + 1]; k++)
+				venues.add(venueIds[avVenue[k]]);
+			areaMap.put(areaIds[a], new AreaObject(areaIds[a], areaScope[a], new PointObject(areaLat[a], areaLng[a]), venues));
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package org.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.utils.IntColumn;
+
+/**
+ * Binary snapshot of a built model: ids, locations and check-ins of users, locations, scopes, areas, neighbors and
+ * users of venues, locations, scopes and venues of areas. Reading a snapshot maps the file and copies each array in bulk,
+ * so nothing is parsed and the grid, neighbors and areas are not built again.
+ *
+ * Layout, little endian, every section starts at a multiple of 8 bytes:
+ * header: magic, version, isSigmoid, modeModel, # users, # venues, # areas, # neighbor entries, # user entries of venues,
+ * # venue entries of areas, # check-in entries, # unknown users (all int);
+ * ids of users, venues and areas: offsets (int[n + 1]) and UTF-8 bytes;
+ * users: lat, lng, known, ckPtr, ckVenue, ckCount, unknownUsers;
+ * venues: lat, lng, scope, area, total check-ins, nbrPtr, nbrIdx, vuPtr, vuUser, vuCount;
+ * areas: lat, lng, scope, avPtr, avVenue.
+ * Arrays are in the same order and have the same meaning as in {@link ModelCore}.
+ * @author tndoan
+ *
+ */
+public class ModelSnapshot {
+
+	/**
+	 * "HPMS"
+	 */
+	public static final int MAGIC = 0x48504D53;
+
+	public static final int VERSION = 1;
+
+	private static final int HEADER_INTS = 12;
+
+	/**
+	 * maximum size of one mapping when reading
+	 */
+	private static final int MAP_SIZE = 1 << 30;
+
+	private final ModelCore core;
+	private final boolean isSigmoid;
+	private final int modeModel;
+
+	private ModelSnapshot(ModelCore core, boolean isSigmoid, int modeModel) {
+		this.core = core;
+		this.isSigmoid = isSigmoid;
+		this.modeModel = modeModel;
+	}
+
+	public ModelCore getCore() {
+		return core;
+	}
+
+	public boolean isSigmoid() {
+		return isSigmoid;
+	}
+
+	public int getModeModel() {
+		return modeModel;
+	}
+
+	/**
+	 * write the current state of the core
+	 * @param fname
+	 * @param core
+	 * @param isSigmoid
+	 * @param modeModel
+	 * @throws IOException
+	 */
+	public static void write(String fname, ModelCore core, boolean isSigmoid, int modeModel) throws IOException {
+		try (FileChannel fc = FileChannel.open(Paths.get(fname), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			Output out = new Output(fc);
+			out.putInts(new int[] { MAGIC, VERSION, isSigmoid ? 1 : 0, modeModel, core.getNumUsers(), core.getNumVenues(),
+					core.getNumAreas(), core.nbrIdx.length, core.checkins.vuUser.length(), core.avVenue.length,
+					core.checkins.ckVenue.length(), core.unknownUsers.length });
+
+			out.putIds(core.userIds);
+			out.putIds(core.venueIds);
+			out.putIds(core.areaIds);
+
+			out.putDoubles(core.userLat);
+			out.putDoubles(core.userLng);
+			out.putBooleans(core.userKnown);
+			out.putInts(core.checkins.ckPtr);
+			out.putInts(core.checkins.ckVenue);
+			out.putInts(core.checkins.ckCount);
+			out.putInts(core.unknownUsers);
+
+			out.putDoubles(core.venueLat);
+			out.putDoubles(core.venueLng);
+			out.putDoubles(core.venueScope);
+			out.putInts(core.venueArea);
+			out.putInts(core.venueTotalCks);
+			out.putInts(core.nbrPtr);
+			out.putInts(core.nbrIdx);
+			out.putInts(core.checkins.vuPtr);
+			out.putInts(core.checkins.vuUser);
+			out.putInts(core.checkins.vuCount);
+
+			out.putDoubles(core.areaLat);
+			out.putDoubles(core.areaLng);
+			out.putDoubles(core.areaScope);
+			out.putInts(core.avPtr);
+			out.putInts(core.avVenue);
+			out.flush();
+		}
+	}
+
+	/**
+	 *
+	 * @param fname
+	 * @return
+	 * @throws IOException	if the file is not a snapshot or its version is not supported
+	 */
+	public static ModelSnapshot read(String fname) throws IOException {
+		return read(fname, false);
+	}
+
+	/**
+	 *
+	 * @param fname
+	 * @param isCheckinsMapped	true -> check-ins stay in the file and are mapped instead of being copied to the heap.
+	 * 							The file must not be changed while the model is used
+	 * @return
+	 * @throws IOException	if the file is not a snapshot or its version is not supported
+	 */
+	public static ModelSnapshot read(String fname, boolean isCheckinsMapped) throws IOException {
+		try (FileChannel fc = FileChannel.open(Paths.get(fname), StandardOpenOption.READ)) {
+			if (fc.size() < 4L * HEADER_INTS)
+				throw new IOException(fname + " is not a model snapshot");
+			Input in = new Input(fc);
+			int[] h = in.getInts(HEADER_INTS);
+			if (h[0] != MAGIC)
+				throw new IOException(fname + " is not a model snapshot");
+			if (h[1] != VERSION)
+				throw new IOException("unsupported snapshot version " + h[1] + " in " + fname);
+			boolean isSigmoid = h[2] != 0;
+			int modeModel = h[3];
+			int numUsers = h[4], numVenues = h[5], numAreas = h[6];
+			int numNbr = h[7], numVu = h[8], numAv = h[9], numCk = h[10], numUnknown = h[11];
+
+			String[] userIds = in.getIds(numUsers);
+			String[] venueIds = in.getIds(numVenues);
+			String[] areaIds = in.getIds(numAreas);
+
+			double[] userLat = in.getDoubles(numUsers);
+			double[] userLng = in.getDoubles(numUsers);
+			boolean[] userKnown = in.getBooleans(numUsers);
+			IntColumn ckPtr = ints(in, numUsers + 1, isCheckinsMapped);
+			IntColumn ckVenue = ints(in, numCk, isCheckinsMapped);
+			IntColumn ckCount = ints(in, numCk, isCheckinsMapped);
+			int[] unknownUsers = in.getInts(numUnknown);
+
+			double[] venueLat = in.getDoubles(numVenues);
+			double[] venueLng = in.getDoubles(numVenues);
+			double[] venueScope = in.getDoubles(numVenues);
+			int[] venueArea = in.getInts(numVenues);
+			int[] venueTotalCks = in.getInts(numVenues);
+			int[] nbrPtr = in.getInts(numVenues + 1);
+			int[] nbrIdx = in.getInts(numNbr);
+			IntColumn vuPtr = ints(in, numVenues + 1, isCheckinsMapped);
+			IntColumn vuUser = ints(in, numVu, isCheckinsMapped);
+			IntColumn vuCount = ints(in, numVu, isCheckinsMapped);
+
+			CheckinGraph checkins = new CheckinGraph(ckPtr, ckVenue, ckCount, vuPtr, vuUser, vuCount);
+			ModelCore core = new ModelCore(userIds, venueIds, areaIds, userLat, userLng, userKnown, checkins,
+					unknownUsers, venueLat, venueLng, venueScope, venueArea, venueTotalCks, nbrPtr, nbrIdx,
+					in.getDoubles(numAreas), in.getDoubles(numAreas), in.getDoubles(numAreas), in.getInts(numAreas + 1),
+					in.getInts(numAv));
+			return new ModelSnapshot(core, isSigmoid, modeModel);
+		}
+	}
+
+	private static IntColumn ints(Input in, int n, boolean isMapped) throws IOException {
+		return isMapped ? in.mapInts(n) : IntColumn.onHeap(in.getInts(n));
+	}
+
+	/**
+	 * sections written through one buffer
+	 */
+	static class Output {
+		private final FileChannel fc;
+		private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+		private long pos;
+
+		Output(FileChannel fc) {
+			this.fc = fc;
+		}
+
+		void putInts(int[] a) throws IOException {
+			for (int from = 0; from < a.length; ) {
+				ensure(4);
+				int len = Math.min(a.length - from, buf.remaining() / 4);
+				buf.asIntBuffer().put(a, from, len);
+				buf.position(buf.position() + 4 * len);
+				from += len;
+			}
+			align();
+		}
+
+		void putInts(IntColumn a) throws IOException {
+			for (int from = 0; from < a.length(); ) {
+				ensure(4);
+				int len = Math.min(a.length() - from, buf.remaining() / 4);
+				for (int k = 0; k < len; k++)
+					buf.putInt(a.get(from + k));
+				from += len;
+			}
+			align();
+		}
+
+		void putDoubles(double[] a) throws IOException {
+			for (int from = 0; from < a.length; ) {
+				ensure(8);
+				int len = Math.min(a.length - from, buf.remaining() / 8);
+				buf.asDoubleBuffer().put(a, from, len);
+				buf.position(buf.position() + 8 * len);
+				from += len;
+			}
+			align();
+		}
+
+		void putBooleans(boolean[] a) throws IOException {
+			for (boolean x : a) {
+				ensure(1);
+				buf.put((byte) (x ? 1 : 0));
+			}
+			align();
+		}
+
+		void putIds(String[] ids) throws IOException {
+			byte[][] bytes = new byte[ids.length][];
+			int[] offsets = new int[ids.length + 1];
+			long total = 0;
+			for (int i = 0; i < ids.length; i++) {
+				bytes[i] = ids[i].getBytes(StandardCharsets.UTF_8);
+				total += bytes[i].length;
+				if (total > Integer.MAX_VALUE)
+					throw new IOException("ids are too long for a snapshot");
+				offsets[i + 1] = (int) total;
+			}
+			putInts(offsets);
+			for (byte[] b : bytes) {
+				for (byte x : b) {
+					ensure(1);
+					buf.put(x);
+				}
+			}
+			align();
+		}
+
+		void flush() throws IOException {
+			buf.flip();
+			while (buf.hasRemaining())
+				pos += fc.write(buf, pos);
+			buf.clear();
+		}
+
+		private void ensure(int n) throws IOException {
+			if (buf.remaining() < n)
+				flush();
+		}
+
+		private void align() throws IOException {
+			while ((pos + buf.position()) % 8 != 0) {
+				ensure(1);
+				buf.put((byte) 0);
+			}
+		}
+	}
+
+	/**
+	 * sections read from mappings of the file
+	 */
+	static class Input {
+		private final FileChannel fc;
+		private long pos;
+
+		Input(FileChannel fc) {
+			this.fc = fc;
+		}
+
+		int[] getInts(int n) throws IOException {
+			int[] result = new int[n];
+			for (int from = 0; from < n; ) {
+				int len = Math.min(n - from, MAP_SIZE / 4);
+				map(4L * len).asIntBuffer().get(result, from, len);
+				from += len;
+			}
+			align();
+			return result;
+		}
+
+		/**
+		 * map the next n ints instead of copying them
+		 * @param n
+		 * @return
+		 * @throws IOException
+		 */
+		IntColumn mapInts(int n) throws IOException {
+			IntColumn result = IntColumn.map(fc, pos, n);
+			pos += 4L * n;
+			align();
+			return result;
+		}
+
+		double[] getDoubles(int n) throws IOException {
+			double[] result = new double[n];
+			for (int from = 0; from < n; ) {
+				int len = Math.min(n - from, MAP_SIZE / 8);
+				map(8L * len).asDoubleBuffer().get(result, from, len);
+				from += len;
+			}
+			align();
+			return result;
+		}
+
+		boolean[] getBooleans(int n) throws IOException {
+			boolean[] result = new boolean[n];
+			for (int from = 0; from < n; ) {
+				int len = Math.min(n - from, MAP_SIZE);
+				MappedByteBuffer buf = map(len);
+				for (int i = 0; i < len; i++)
+					result[from + i] = buf.get(i) != 0;
+				from += len;
+			}
+			align();
+			return result;
+		}
+
+		String[] getIds(int n) throws IOException {
+			int[] offsets = getInts(n + 1);
+			String[] result = new String[n];
+			byte[] bytes = new byte[offsets[n]];
+			MappedByteBuffer buf = map(offsets[n]);
+			buf.get(bytes);
+			for (int i = 0; i < n; i++)
+				result[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+			align();
+			return result;
+		}
+
+		/**
+		 * map the next len bytes
+		 * @param len
+		 * @return
+		 * @throws IOException	if the file ends before
+		 */
+		private MappedByteBuffer map(long len) throws IOException {
+			if (pos + len > fc.size())
+				throw new IOException("snapshot is truncated");
+			MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, pos, len);
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			pos += len;
+			return buf;
+		}
+
+		private void align() {
+			pos = (pos + 7) & ~7L;
+		}
+	}
+}
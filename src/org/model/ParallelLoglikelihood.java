@@ -0,0 +1,214 @@
+package org.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.utils.BatchKernels;
+import org.utils.CompensatedSum;
+import org.utils.FastFunction;
+
+/**
+ * Fork/join evaluator of log likelihood over the model core. Venues and neighbor lists are split into chunks
+ * of fixed size, each chunk is summed with compensated summation and partial sums are combined in chunk order.
+ * Chunks do not depend on the number of threads, so the result is the same bit for bit for every run and every
+ * parallelism level.
+ * @author tndoan
+ *
+ */
+public class ParallelLoglikelihood {
+
+	/**
+	 * number of venues in one chunk of each component
+	 */
+	public static final int VENUE_CHUNK = 512;
+
+	/**
+	 * number of neighbors in one chunk of the log likelihood of one venue
+	 */
+	public static final int NEIGHBOR_CHUNK = 4096;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * 
+	 * @param parallelism	number of threads used to evaluate log likelihood
+	 */
+	public ParallelLoglikelihood(int parallelism) {
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * stop the threads of the evaluator once the running evaluations finish; it must not be used afterwards
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * the total log-likelihood of the whole data. The first component only visits check-ins, venue by venue.
+	 * See {@link Loglikelihood#calculateLLH(ModelCore, boolean, int, boolean)}
+	 * @param core
+	 * @param isSigmoid
+	 * @param modeModel
+	 * @return
+	 */
+	public double calculateLLH(ModelCore core, boolean isSigmoid, int modeModel) {
+		CompensatedSum llh = new CompensatedSum();
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION) {
+			// first component of log likelihood, check-ins of each venue form one block against the center of its area
+			CompensatedSum[] partials = run(core.getNumVenues(), VENUE_CHUNK, (from, to, sum) -> {
+				for (int v = from; v < to; v++) {
+					if (!core.checkins.hasUsers(v))
+						continue;
+					int a = core.venueArea[v];
+					addAreaTerm(core, v, a, core.areaScope[a], sum);
+				}
+			});
+			for (CompensatedSum p : partials)
+				llh.add(p);
+		}
+
+		if (modeModel == ModeModel.COMBINED || modeModel == ModeModel.NEIGHBORHOOD_COMPETITION) {
+			// second component of log likelihood
+			CompensatedSum[] partials = run(core.getNumVenues(), VENUE_CHUNK, (from, to, sum) -> {
+				for (int v = from; v < to; v++) {
+					double w_v = core.venueTotalCks[v];
+					double w = 0.0;
+					for (int k = core.nbrPtr[v]; k < core.nbrPtr[v + 1]; k++)
+						w += FastFunction.logWin(isSigmoid, core.venueScope[v] - core.venueScope[core.nbrIdx[k]]);
+					sum.add(w * w_v);
+				}
+			});
+			for (CompensatedSum p : partials)
+				llh.add(p);
+		}
+
+		return llh.value();
+	}
+
+	/**
+	 * log likelihood of one venue. omit constant. Neighbors of venue are split into chunks.
+	 * See {@link Loglikelihood#calculateLLH(ModelCore, boolean, int, double, int)}
+	 * @param core
+	 * @param isSigmoid
+	 * @param v			index of venue
+	 * @param sigma_v	the influence scope of venue
+	 * @param modeModel
+	 * @return
+	 */
+	public double calculateLLH(ModelCore core, boolean isSigmoid, int v, double sigma_v, int modeModel) {
+		int a = core.venueArea[v];
+		double sqCurScope = core.venueScope[v] * core.venueScope[v];
+		int nStart = core.nbrPtr[v];
+		boolean isArea = modeModel == ModeModel.COMBINED || modeModel == ModeModel.DISTANCE_AREAATTRACTION;
+		boolean isCompetition = modeModel == ModeModel.COMBINED || modeModel == ModeModel.NEIGHBORHOOD_COMPETITION;
+		double w_v = core.venueTotalCks[v];
+
+		CompensatedSum llh = new CompensatedSum();
+		if (isArea) {
+			// first term
+			double sqScope = core.areaScope[a] * core.areaScope[a] - sqCurScope + sigma_v * sigma_v;
+			addAreaTerm(core, v, a, Math.sqrt(sqScope), llh);
+		}
+
+		CompensatedSum[] partials = run(core.nbrPtr[v + 1] - nStart, NEIGHBOR_CHUNK, (from, to, sum) -> {
+			for (int k = nStart + from; k < nStart + to; k++) {
+				int n = core.nbrIdx[k];
+				if (isArea && core.checkins.hasUsers(n)) {
+					// second term
+					int na = core.venueArea[n];
+					double sqScope = core.areaScope[na] * core.areaScope[na] - sqCurScope + sigma_v * sigma_v;
+					addAreaTerm(core, n, na, Math.sqrt(sqScope), sum);
+				}
+				if (isCompetition) {
+					// third and fourth term
+					double sigma_n = core.venueScope[n];
+					sum.add(w_v * FastFunction.logWin(isSigmoid, sigma_v - sigma_n));
+					sum.add(core.venueTotalCks[n] * FastFunction.logWin(isSigmoid, sigma_n - sigma_v));
+				}
+			}
+		});
+		for (CompensatedSum p : partials)
+			llh.add(p);
+
+		return llh.value();
+	}
+
+	private static void addAreaTerm(ModelCore core, int v, int a, double scope, CompensatedSum sum) {
+		int start = core.checkins.vuStart(v);
+		int n = core.checkins.vuEnd(v) - start;
+		BatchKernels.Block block = BatchKernels.block(n);
+		for (int i = 0; i < n; i++) {
+			int u = core.checkins.vuUser(start + i);
+			block.lat[i] = core.userLat[u];
+			block.lng[i] = core.userLng[u];
+			block.w[i] = core.checkins.vuCount(start + i);
+		}
+		sum.add(BatchKernels.gaussianAreaTerm(block, n, core.areaLat[a], core.areaLng[a], scope));
+	}
+
+	/**
+	 * work of one chunk
+	 */
+	private interface ChunkSum {
+		void sum(int from, int to, CompensatedSum sum);
+	}
+
+	/**
+	 * split [0, n) into chunks of given size and sum each chunk in the pool
+	 * @param n
+	 * @param chunkSize
+	 * @param work
+	 * @return	partial sum of each chunk, in chunk order
+	 */
+	private CompensatedSum[] run(int n, int chunkSize, ChunkSum work) {
+		int numChunks = (n + chunkSize - 1) / chunkSize;
+		CompensatedSum[] partials = new CompensatedSum[numChunks];
+		if (numChunks == 1) { // not worth to fork
+			partials[0] = new CompensatedSum();
+			work.sum(0, n, partials[0]);
+		} else if (numChunks > 1) {
+			pool.invoke(new ChunkTask(0, numChunks, n, chunkSize, work, partials));
+		}
+		return partials;
+	}
+
+	private static class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int fromChunk;
+		private final int toChunk;
+		private final int n;
+		private final int chunkSize;
+		private final ChunkSum work;
+		private final CompensatedSum[] partials;
+
+		ChunkTask(int fromChunk, int toChunk, int n, int chunkSize, ChunkSum work, CompensatedSum[] partials) {
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+			this.n = n;
+			this.chunkSize = chunkSize;
+			this.work = work;
+			this.partials = partials;
+		}
+
+		@Override
+		protected void compute() {
+			if (toChunk - fromChunk == 1) {
+				CompensatedSum sum = new CompensatedSum();
+				work.sum(fromChunk * chunkSize, Math.min(n, (fromChunk + 1) * chunkSize), sum);
+				partials[fromChunk] = sum;
+			} else {
+				int mid = (fromChunk + toChunk) >>> 1;
+				invokeAll(new ChunkTask(fromChunk, mid, n, chunkSize, work, partials),
+						new ChunkTask(mid, toChunk, n, chunkSize, work, partials));
+			}
+		}
+	}
+}
@@ -8,4 +8,24 @@ public class Params {
 	 * threshold to terminate
 	 */
 	public static final double threshold = 0.01;
+	
+	/**
+	 * Newton method on log scope stops when the step is smaller than this value
+	 */
+	public static final double newtonTolerance = 1e-6;
+	
+	/**
+	 * maximum number of Newton steps for one venue
+	 */
+	public static final int maxNewtonIter = 50;
+	
+	/**
+	 * maximum length of one Newton step on log scope, i.e. scope changes at most e times in one step
+	 */
+	public static final double maxNewtonStep = 1.0;
+	
+	/**
+	 * number of rounds of local optimization after new check-ins are added to a model
+	 */
+	public static final int maxLocalIter = 3;
 }
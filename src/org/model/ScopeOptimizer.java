@@ -0,0 +1,16 @@
+package org.model;
+
+/**
+ * optimizers of influence scope of one venue
+ */
+public class ScopeOptimizer {
+	/**
+	 * gradient descent with backtracking line search on the scope
+	 */
+	public static final int GRADIENT_DESCENT = 1;
+	
+	/**
+	 * safeguarded Newton method on the log of the scope
+	 */
+	public static final int NEWTON = 2;
+}
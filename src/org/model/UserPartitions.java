@@ -0,0 +1,260 @@
+package org.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.utils.Distance;
+import org.utils.IntColumn;
+
+/**
+ * Check-ins of users kept on disk in partitions of consecutive users, so that training only holds a few partitions in
+ * memory at a time. Locations of users are updated and the sufficient statistics of venues ({@link VenueStats}) are
+ * accumulated partition by partition: each partition adds sum of w and sum of w * d of its users to every venue they
+ * visit. Partitions are processed in waves of one partition per thread and merged in order of partitions, so the
+ * statistics do not depend on the number of threads.
+ *
+ * Layout of a partition file, little endian, every section starts at a multiple of 8 bytes:
+ * header: magic, version, first user, end of users (exclusive), # check-ins (all int); ckPtr (from 0), ckVenue, ckCount.
+ * Venues of each user are sorted by venue index, as in {@link CheckinGraph}.
+ * @author tndoan
+ *
+ */
+public class UserPartitions {
+
+	/**
+	 * "HPMP"
+	 */
+	public static final int MAGIC = 0x48504D50;
+
+	public static final int VERSION = 1;
+
+	private static final int HEADER_INTS = 5;
+
+	private final String[] files;
+
+	/**
+	 * users of partition p are [userFrom[p], userFrom[p + 1])
+	 */
+	private final int[] userFrom;
+
+	private UserPartitions(String[] files, int[] userFrom) {
+		this.files = files;
+		this.userFrom = userFrom;
+	}
+
+	public int getNumPartitions() {
+		return files.length;
+	}
+
+	/**
+	 * write check-ins of all users of the core into partitions with about the same number of check-ins
+	 * @param core
+	 * @param dir			directory of partition files; it is made if needed
+	 * @param numPartitions
+	 * @return
+	 * @throws IOException
+	 */
+	public static UserPartitions write(ModelCore core, String dir, int numPartitions) throws IOException {
+		if (numPartitions <= 0)
+			throw new IllegalArgumentException("number of partitions must be positive: " + numPartitions);
+		CheckinGraph checkins = core.checkins;
+		int numUsers = core.getNumUsers();
+		long numCk = checkins.getNumEdges();
+		Path path = Files.createDirectories(Paths.get(dir));
+
+		int[] userFrom = new int[numPartitions + 1];
+		int u = 0;
+		for (int p = 1; p < numPartitions; p++) {
+			long target = numCk * p / numPartitions;
+			while (u < numUsers && checkins.ckStart(u) < target)
+				u++;
+			userFrom[p] = u;
+		}
+		userFrom[numPartitions] = numUsers;
+
+		String[] files = new String[numPartitions];
+		for (int p = 0; p < numPartitions; p++) {
+			files[p] = path.resolve("users-" + p + ".bin").toString();
+			int from = userFrom[p], to = userFrom[p + 1];
+			int base = checkins.ckStart(from);
+			int n = checkins.ckStart(to) - base;
+			int[] ckPtr = new int[to - from + 1];
+			for (int i = 0; i <= to - from; i++)
+				ckPtr[i] = checkins.ckStart(from + i) - base;
+			int[] ckVenue = new int[n];
+			int[] ckCount = new int[n];
+			checkins.ckVenue.get(base, ckVenue, 0, n);
+			checkins.ckCount.get(base, ckCount, 0, n);
+
+			try (FileChannel fc = FileChannel.open(Paths.get(files[p]), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ModelSnapshot.Output out = new ModelSnapshot.Output(fc);
+				out.putInts(new int[] { MAGIC, VERSION, from, to, n });
+				out.putInts(ckPtr);
+				out.putInts(ckVenue);
+				out.putInts(ckCount);
+				out.flush();
+			}
+		}
+		return new UserPartitions(files, userFrom);
+	}
+
+	/**
+	 * stream all partitions: move unknown users to the weighted center of areas of their check-ins if asked, then
+	 * add check-ins of users to the statistics of venues
+	 * @param core			locations of users in the core are updated
+	 * @param checkinMode	1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 * @param isMoving		true -> update locations of unknown users; false -> only compute statistics
+	 * @return				statistics of venues for the locations of users after the update
+	 * @throws IOException
+	 */
+	public VenueStats update(ModelCore core, int checkinMode, boolean isMoving) throws IOException {
+		VenueStats stats = new VenueStats(core.getNumVenues(), checkinMode);
+		int wave = Runtime.getRuntime().availableProcessors();
+		try {
+			for (int first = 0; first < files.length; first += wave) {
+				List<double[][]> partials = IntStream.range(first, Math.min(first + wave, files.length)).parallel()
+						.mapToObj(p -> process(core, p, checkinMode, isMoving)).collect(Collectors.toList());
+				for (double[][] partial : partials) {
+					for (int v = 0; v < stats.sumW.length; v++) {
+						stats.sumW[v] += partial[0][v];
+						stats.sumWD[v] += partial[1][v];
+						stats.sumWMode[v] += partial[2][v];
+						stats.sumWDMode[v] += partial[3][v];
+					}
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return stats;
+	}
+
+	/**
+	 * read check-ins of all partitions back into a graph on the heap. Users of each venue are sorted by user index
+	 * @param numVenues
+	 * @return
+	 * @throws IOException
+	 */
+	public CheckinGraph readGraph(int numVenues) throws IOException {
+		int numUsers = userFrom[files.length];
+		int[] ckPtr = new int[numUsers + 1];
+		ArrayList<int[]> venues = new ArrayList<>();
+		ArrayList<int[]> counts = new ArrayList<>();
+		int numCk = 0;
+		for (int p = 0; p < files.length; p++) {
+			try (FileChannel fc = FileChannel.open(Paths.get(files[p]), StandardOpenOption.READ)) {
+				ModelSnapshot.Input in = open(fc, p);
+				int[] ptr = in.getInts(userFrom[p + 1] - userFrom[p] + 1);
+				for (int i = 1; i < ptr.length; i++)
+					ckPtr[userFrom[p] + i] = numCk + ptr[i];
+				venues.add(in.getInts(ptr[ptr.length - 1]));
+				counts.add(in.getInts(ptr[ptr.length - 1]));
+				numCk += ptr[ptr.length - 1];
+			}
+		}
+		int[] ckVenue = new int[numCk];
+		int[] ckCount = new int[numCk];
+		int pos = 0;
+		for (int p = 0; p < files.length; p++) {
+			System.arraycopy(venues.get(p), 0, ckVenue, pos, venues.get(p).length);
+			System.arraycopy(counts.get(p), 0, ckCount, pos, counts.get(p).length);
+			pos += venues.get(p).length;
+		}
+
+		// users of venues by transposing check-ins of users
+		int[] vuPtr = new int[numVenues + 1];
+		for (int v : ckVenue)
+			vuPtr[v + 1]++;
+		for (int v = 0; v < numVenues; v++)
+			vuPtr[v + 1] += vuPtr[v];
+		int[] vuUser = new int[numCk];
+		int[] vuCount = new int[numCk];
+		int[] fill = Arrays.copyOf(vuPtr, numVenues);
+		for (int u = 0; u < numUsers; u++) {
+			for (int e = ckPtr[u]; e < ckPtr[u + 1]; e++) {
+				int k = fill[ckVenue[e]]++;
+				vuUser[k] = u;
+				vuCount[k] = ckCount[e];
+			}
+		}
+		return new CheckinGraph(ckPtr, ckVenue, ckCount, vuPtr, vuUser, vuCount);
+	}
+
+	/**
+	 * process one partition
+	 * @param core
+	 * @param p				index of partition
+	 * @param checkinMode
+	 * @param isMoving
+	 * @return				sum of w, sum of w * d, and the same sums weighted by check-in mode, of each venue
+	 */
+	private double[][] process(ModelCore core, int p, int checkinMode, boolean isMoving) {
+		int numVenues = core.getNumVenues();
+		double[][] sums = new double[4][numVenues];
+		try (FileChannel fc = FileChannel.open(Paths.get(files[p]), StandardOpenOption.READ)) {
+			ModelSnapshot.Input in = open(fc, p);
+			int from = userFrom[p];
+			IntColumn ckPtr = in.mapInts(userFrom[p + 1] - from + 1);
+			int n = ckPtr.get(ckPtr.length() - 1);
+			IntColumn ckVenue = in.mapInts(n);
+			IntColumn ckCount = in.mapInts(n);
+
+			for (int i = 0; i < ckPtr.length() - 1; i++) {
+				int u = from + i;
+				int start = ckPtr.get(i);
+				int len = ckPtr.get(i + 1) - start;
+				if (isMoving && !core.userKnown[u] && len > 0)
+					core.moveToCenterOfAreas(u, ckVenue, ckCount, start, len, checkinMode);
+
+				double uLat = core.userLat[u];
+				double uLng = core.userLng[u];
+				for (int e = start; e < start + len; e++) {
+					int v = ckVenue.get(e);
+					int a = core.venueArea[v];
+					if (a < 0)
+						continue;
+					int c = ckCount.get(e);
+					double w = ModelCore.weight(c, checkinMode);
+					double d = Distance.calSqEuDistance(uLat, uLng, core.areaLat[a], core.areaLng[a]);
+					sums[0][v] += c;
+					sums[1][v] += c * d;
+					sums[2][v] += w;
+					sums[3][v] += w * d;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sums;
+	}
+
+	/**
+	 * check the header of a partition file
+	 * @param fc
+	 * @param p
+	 * @return	input positioned after the header
+	 * @throws IOException	if the file is not the partition
+	 */
+	private ModelSnapshot.Input open(FileChannel fc, int p) throws IOException {
+		if (fc.size() < 4L * HEADER_INTS)
+			throw new IOException(files[p] + " is not a user partition");
+		ModelSnapshot.Input in = new ModelSnapshot.Input(fc);
+		int[] h = in.getInts(HEADER_INTS);
+		if (h[0] != MAGIC || h[2] != userFrom[p] || h[3] != userFrom[p + 1])
+			throw new IOException(files[p] + " is not user partition " + p);
+		if (h[1] != VERSION)
+			throw new IOException("unsupported user partition version " + h[1] + " in " + files[p]);
+		return in;
+	}
+}
@@ -0,0 +1,110 @@
+package org.model;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.utils.BatchKernels;
+
+/**
+ * Sufficient statistics of check-ins of each venue with respect to the center of its area:
+ * W_v = sum of w_uv and D_v = sum of w_uv * d(u, area of v) over users u of venue v.
+ * While locations of users and areas are fixed, the contribution of venue v to the likelihood of its area with square
+ * scope S is -W_v * log(sqrt(S)) - D_v / (2 S), so optimizing the scope of a venue costs O(#neighbors) per evaluation
+ * instead of O(#check-ins in the neighborhood).
+ * Statistics are kept for the actual number of check-ins (used by log likelihood) and for the weights of a check-in mode
+ * (used by gradient).
+ * @author tndoan
+ *
+ */
+public class VenueStats {
+
+	/**
+	 * sum of number of check-ins and sum of number of check-ins * square distance
+	 */
+	final double[] sumW;
+	final double[] sumWD;
+
+	/**
+	 * same sums but check-ins are weighted by {@link #checkinMode}
+	 */
+	final double[] sumWMode;
+	final double[] sumWDMode;
+
+	/**
+	 * 1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 */
+	final int checkinMode;
+
+	/**
+	 * compute statistics from current locations of users and areas
+	 * @param core
+	 * @param checkinMode	1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 */
+	public VenueStats(ModelCore core, int checkinMode) {
+		int numVenues = core.getNumVenues();
+		this.checkinMode = checkinMode;
+		sumW = new double[numVenues];
+		sumWD = new double[numVenues];
+		sumWMode = new double[numVenues];
+		sumWDMode = new double[numVenues];
+
+		IntStream.range(0, numVenues).parallel().forEach(v -> compute(core, v));
+	}
+
+	/**
+	 * statistics which are all 0, to be accumulated, e.g. by {@link UserPartitions}
+	 * @param numVenues
+	 * @param checkinMode	1: use actual # of check-in; 2: log(# cks of user); 3: binary check-in
+	 */
+	VenueStats(int numVenues, int checkinMode) {
+		this.checkinMode = checkinMode;
+		sumW = new double[numVenues];
+		sumWD = new double[numVenues];
+		sumWMode = new double[numVenues];
+		sumWDMode = new double[numVenues];
+	}
+
+	/**
+	 * recompute statistics of some venues, e.g. after users of them have moved or have new check-ins
+	 * @param core		core which has the same venues as the one of the statistics
+	 * @param venues	indices of venues
+	 */
+	void refresh(ModelCore core, int[] venues) {
+		Arrays.stream(venues).parallel().forEach(v -> compute(core, v));
+	}
+
+	/**
+	 *
+	 * @param core
+	 * @param v		index of venue
+	 */
+	private void compute(ModelCore core, int v) {
+		int a = core.venueArea[v];
+		if (a < 0)
+			return;
+		int start = core.checkins.vuStart(v);
+		int n = core.checkins.vuEnd(v) - start;
+		BatchKernels.Block block = BatchKernels.block(n);
+		for (int i = 0; i < n; i++) {
+			int u = core.checkins.vuUser(start + i);
+			block.lat[i] = core.userLat[u];
+			block.lng[i] = core.userLng[u];
+			block.w[i] = core.checkins.vuCount(start + i);
+		}
+		BatchKernels.sqDistances(block.lat, block.lng, n, core.areaLat[a], core.areaLng[a], block.d);
+		double w = BatchKernels.sum(block.w, n);
+		double wd = BatchKernels.dot(block.w, block.d, n);
+		for (int i = 0; i < n; i++)
+			block.w[i] = ModelCore.weight(core.checkins.vuCount(start + i), checkinMode);
+		double wMode = BatchKernels.sum(block.w, n);
+		double wdMode = BatchKernels.dot(block.w, block.d, n);
+		sumW[v] = w;
+		sumWD[v] = wd;
+		sumWMode[v] = wMode;
+		sumWDMode[v] = wdMode;
+	}
+
+	public int getCheckinMode() {
+		return checkinMode;
+	}
+}
@@ -0,0 +1,101 @@
+package org.object;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Check-ins of one user: venue ids sorted in String order with the number of check-ins in each venue in a parallel
+ * array. A check-in costs two array slots instead of a map entry and a boxed Integer, and a lookup is a binary search
+ * over at most log2(#venues of user) comparisons.
+ * @author tndoan
+ *
+ */
+public class CheckinList {
+
+	private String[] venueIds;
+	private int[] counts;
+
+	private int size;
+
+	/**
+	 *
+	 * @param checkinMap	key is venue id, value is number of check-ins; null -> no check-in
+	 */
+	public CheckinList(HashMap<String, Integer> checkinMap) {
+		size = checkinMap == null ? 0 : checkinMap.size();
+		venueIds = size == 0 ? new String[0] : checkinMap.keySet().toArray(new String[size]);
+		Arrays.sort(venueIds);
+		counts = new int[size];
+		for (int i = 0; i < size; i++)
+			counts[i] = checkinMap.get(venueIds[i]);
+	}
+
+	/**
+	 *
+	 * @return	number of venues where user has done check-ins
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @param i	position in sorted order
+	 * @return
+	 */
+	public String getVenueId(int i) {
+		return venueIds[i];
+	}
+
+	/**
+	 *
+	 * @param i	position in sorted order
+	 * @return	number of check-ins in the i-th venue
+	 */
+	public int getCount(int i) {
+		return counts[i];
+	}
+
+	/**
+	 *
+	 * @param vId	venue id
+	 * @return		position of venue; (-(insertion point) - 1) if user has never visited the venue
+	 */
+	public int indexOf(String vId) {
+		return Arrays.binarySearch(venueIds, 0, size, vId);
+	}
+
+	/**
+	 *
+	 * @param vId	venue id
+	 * @return		number of check-ins of user in venue; 0 if user has never visited the venue
+	 */
+	public int numCks(String vId) {
+		int i = indexOf(vId);
+		return i < 0 ? 0 : counts[i];
+	}
+
+	/**
+	 * add new check-ins in a venue, keeping venues sorted
+	 * @param vId		venue id
+	 * @param numCks	number of new check-ins
+	 */
+	public void add(String vId, int numCks) {
+		int i = indexOf(vId);
+		if (i >= 0) {
+			counts[i] += numCks;
+			return;
+		}
+		i = -i - 1;
+		if (size == venueIds.length) {
+			int capacity = Math.max(4, 2 * size);
+			venueIds = Arrays.copyOf(venueIds, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+		}
+		System.arraycopy(venueIds, i, venueIds, i + 1, size - i);
+		System.arraycopy(counts, i, counts, i + 1, size - i);
+		venueIds[i] = vId;
+		counts[i] = numCks;
+		size++;
+	}
+}
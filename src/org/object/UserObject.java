@@ -1,6 +1,7 @@
 package org.object;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Set;
 
 public class UserObject {
@@ -16,9 +17,9 @@ public class UserObject {
 	private boolean isKnownLocation;
 	
 	/**
-	 * checkin map whose key is venue id, value is number of check-in that user has made in this venue
+	 * venues where user has done check-ins and number of check-ins in each of them
 	 */
-	private HashMap<String, Integer> checkinMap;
+	private CheckinList checkins;
 	
 	/**
 	 * id of user
@@ -31,11 +32,16 @@ public class UserObject {
 	 * @return		number of check-in
 	 */
 	public int retrieveNumCks(String vIds){
-		Integer num = checkinMap.get(vIds);
-		if (num == null)
-			return 0;
-		else
-			return num;
+		return checkins.numCks(vIds);
+	}
+	
+	/**
+	 * add new check-ins of user in a venue
+	 * @param vId		venue id
+	 * @param numCks	number of new check-ins
+	 */
+	public void addCheckins(String vId, int numCks) {
+		checkins.add(vId, numCks);
 	}
 	
 	/**
@@ -64,14 +70,25 @@ public class UserObject {
 		this.id = id;
 		this.location = location;
 		this.isKnownLocation = isKnownLocation;
-		this.checkinMap = checkinMap;
+		this.checkins = new CheckinList(checkinMap);
+	}
+	
+	/**
+	 * 
+	 * @return venues where user has done check-ins, sorted by venue id
+	 */
+	public CheckinList getCheckins() {
+		return checkins;
 	}
 	
 	/**
 	 * 
-	 * @return the set of venue id where user has done check-in
+	 * @return the set of venue id where user has done check-in. It is a copy
 	 */
 	public Set<String> getAllVenues() {
-		return checkinMap.keySet();
+		Set<String> result = new HashSet<>();
+		for (int i = 0; i < checkins.size(); i++)
+			result.add(checkins.getVenueId(i));
+		return result;
 	}
 }
@@ -98,6 +98,21 @@ public class VenueObject {
 		return areaId;
 	}
 
+	/**
+	 * add new check-ins of a user in this venue
+	 * @param userId	id of user
+	 * @param numCks	number of new check-ins
+	 * @param isNewUser	true if user has never visited this venue
+	 */
+	public void addCheckins(String userId, int numCks, boolean isNewUser) {
+		totalCks += numCks;
+		if (isNewUser) {
+			if (userIds == null)
+				userIds = new ArrayList<>();
+			userIds.add(userId);
+		}
+	}
+	
 	/**
 	 * can set area id for venue one time. The second time will be ignored.
 	 * @param areaId
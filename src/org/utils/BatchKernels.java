@@ -0,0 +1,135 @@
+package org.utils;
+
+/**
+ * Kernels over blocks of points held in flat arrays. Loops have no branches and no calls so that the JIT can unroll
+ * and vectorize the element-wise parts (square distances); sums are split into four independent accumulators so they
+ * are not limited by the latency of one chain of additions.
+ *
+ * Callers gather coordinates and weights of a block (e.g. users of one venue) into a {@link Block} of the current thread
+ * and then call the kernels against one center.
+ * @author tndoan
+ *
+ */
+public class BatchKernels {
+
+	/**
+	 * scratch arrays of one thread
+	 */
+	public static final class Block {
+		public double[] lat = new double[64];
+		public double[] lng = new double[64];
+		public double[] w = new double[64];
+		public double[] d = new double[64];
+
+		/**
+		 * make sure arrays can hold n elements
+		 * @param n
+		 * @return	this block
+		 */
+		public Block ensure(int n) {
+			if (lat.length < n) {
+				int size = Math.max(n, 2 * lat.length);
+				lat = new double[size];
+				lng = new double[size];
+				w = new double[size];
+				d = new double[size];
+			}
+			return this;
+		}
+	}
+
+	private static final ThreadLocal<Block> BLOCKS = ThreadLocal.withInitial(Block::new);
+
+	/**
+	 *
+	 * @param n	number of elements
+	 * @return	scratch block of the current thread which can hold n elements
+	 */
+	public static Block block(int n) {
+		return BLOCKS.get().ensure(n);
+	}
+
+	/**
+	 * square Euclidean distances between n points and one center
+	 * @param lat	latitudes of points
+	 * @param lng	longitudes of points
+	 * @param n		number of points
+	 * @param cLat	latitude of center
+	 * @param cLng	longitude of center
+	 * @param out	out[i] is square distance between point i and the center
+	 */
+	public static void sqDistances(double[] lat, double[] lng, int n, double cLat, double cLng, double[] out) {
+		for (int i = 0; i < n; i++) {
+			double x = lat[i] - cLat;
+			double y = lng[i] - cLng;
+			out[i] = x * x + y * y;
+		}
+	}
+
+	/**
+	 *
+	 * @param a
+	 * @param n
+	 * @return	sum of first n elements
+	 */
+	public static double sum(double[] a, int n) {
+		double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+		int i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += a[i];
+			s1 += a[i + 1];
+			s2 += a[i + 2];
+			s3 += a[i + 3];
+		}
+		for (; i < n; i++)
+			s0 += a[i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/**
+	 *
+	 * @param a
+	 * @param b
+	 * @param n
+	 * @return	sum of a[i] * b[i] over first n elements
+	 */
+	public static double dot(double[] a, double[] b, int n) {
+		double s0 = 0.0, s1 = 0.0, s2 = 0.0, s3 = 0.0;
+		int i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += a[i] * b[i];
+			s1 += a[i + 1] * b[i + 1];
+			s2 += a[i + 2] * b[i + 2];
+			s3 += a[i + 3] * b[i + 3];
+		}
+		for (; i < n; i++)
+			s0 += a[i] * b[i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/**
+	 * Gaussian area term of a block of check-ins: sum of w[i] * (-log(scope) - d[i] / (2 scope^2))
+	 * @param d		square distances between users and center of area
+	 * @param w		weights of check-ins
+	 * @param n		number of check-ins
+	 * @param scope	scope of area
+	 * @return
+	 */
+	public static double gaussianAreaTerm(double[] d, double[] w, int n, double scope) {
+		return - Math.log(scope) * sum(w, n) - dot(w, d, n) / (2 * scope * scope);
+	}
+
+	/**
+	 * square distances between a block of points and one center, and Gaussian area term of the block
+	 * @param block	block whose lat, lng and w hold n points and their weights; d receives square distances
+	 * @param n		number of points
+	 * @param cLat	latitude of center
+	 * @param cLng	longitude of center
+	 * @param scope	scope of area
+	 * @return		see {@link #gaussianAreaTerm(double[], double[], int, double)}
+	 */
+	public static double gaussianAreaTerm(Block block, int n, double cLat, double cLng, double scope) {
+		sqDistances(block.lat, block.lng, n, cLat, cLng, block.d);
+		return gaussianAreaTerm(block.d, block.w, n, scope);
+	}
+}
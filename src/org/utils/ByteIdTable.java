@@ -0,0 +1,160 @@
+package org.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Maps ids given as slices of bytes to dense indices 0, 1, 2, ... in order of first appearance. Bytes of each distinct
+ * id are copied once into one arena and the String of an id is only made when it is asked for, so looking up an id
+ * which is already known does not allocate.
+ * @author tndoan
+ *
+ */
+public class ByteIdTable {
+
+	/**
+	 * bytes of all ids, one after another
+	 */
+	private byte[] arena = new byte[1 << 12];
+	private int arenaSize;
+
+	/**
+	 * start and hash of each id; id i is arena[start[i], start[i + 1])
+	 */
+	private int[] start = new int[65];
+	private int[] hashes = new int[64];
+	private int size;
+
+	/**
+	 * String of each id, made on first request
+	 */
+	private String[] strings = new String[64];
+
+	/**
+	 * open addressing table; slot holds index of id + 1, 0 if empty
+	 */
+	private int[] slots = new int[128];
+
+	/**
+	 *
+	 * @return	number of distinct ids
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * index of id in buf[from, to); the id is added if it is new
+	 * @param buf
+	 * @param from	first byte of id
+	 * @param to	end of id, exclusive
+	 * @return
+	 */
+	public int getOrAdd(ByteBuffer buf, int from, int to) {
+		int h = hash(buf, from, to);
+		int mask = slots.length - 1;
+		for (int s = h & mask; ; s = (s + 1) & mask) {
+			int i = slots[s] - 1;
+			if (i < 0)
+				break;
+			if (hashes[i] == h && equals(i, buf, from, to))
+				return i;
+		}
+		return add(buf, from, to, h);
+	}
+
+	/**
+	 * add all ids of other table, in order of their indices
+	 * @param other
+	 * @return	index in this table of each id of other table
+	 */
+	public int[] addAll(ByteIdTable other) {
+		ByteBuffer buf = ByteBuffer.wrap(other.arena);
+		int[] result = new int[other.size];
+		for (int i = 0; i < other.size; i++)
+			result[i] = getOrAdd(buf, other.start[i], other.start[i + 1]);
+		return result;
+	}
+
+	/**
+	 *
+	 * @param i	index of id
+	 * @return	id as String; the same String object is returned every time
+	 */
+	public String get(int i) {
+		String s = strings[i];
+		if (s == null) {
+			s = new String(arena, start[i], start[i + 1] - start[i], StandardCharsets.UTF_8);
+			strings[i] = s;
+		}
+		return s;
+	}
+
+	/**
+	 *
+	 * @return	all ids as Strings, in order of index
+	 */
+	public String[] toArray() {
+		String[] result = new String[size];
+		for (int i = 0; i < size; i++)
+			result[i] = get(i);
+		return result;
+	}
+
+	private int add(ByteBuffer buf, int from, int to, int h) {
+		int len = to - from;
+		if (arenaSize + len > arena.length)
+			arena = Arrays.copyOf(arena, Math.max(arenaSize + len, 2 * arena.length));
+		for (int k = 0; k < len; k++)
+			arena[arenaSize + k] = buf.get(from + k);
+		arenaSize += len;
+
+		if (size == hashes.length) {
+			hashes = Arrays.copyOf(hashes, 2 * size);
+			strings = Arrays.copyOf(strings, 2 * size);
+			start = Arrays.copyOf(start, 2 * size + 1);
+		}
+		int i = size++;
+		hashes[i] = h;
+		start[i + 1] = arenaSize;
+
+		if (2 * size > slots.length)
+			rehash();
+		else
+			insert(i);
+		return i;
+	}
+
+	private void insert(int i) {
+		int mask = slots.length - 1;
+		int s = hashes[i] & mask;
+		while (slots[s] != 0)
+			s = (s + 1) & mask;
+		slots[s] = i + 1;
+	}
+
+	private void rehash() {
+		slots = new int[2 * slots.length];
+		for (int i = 0; i < size; i++)
+			insert(i);
+	}
+
+	private boolean equals(int i, ByteBuffer buf, int from, int to) {
+		int s = start[i];
+		if (start[i + 1] - s != to - from)
+			return false;
+		for (int k = from; k < to; k++, s++) {
+			if (arena[s] != buf.get(k))
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(ByteBuffer buf, int from, int to) {
+		int h = 0x811c9dc5;
+		for (int k = from; k < to; k++)
+			h = (h ^ buf.get(k)) * 0x01000193;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,92 @@
+package org.utils;
+
+import java.util.HashMap;
+
+/**
+ * Check-ins of a check-in file as primitive arrays. Each line of the file is a row: row r belongs to user
+ * rowUser[r] and its check-ins are edges rowPtr[r] to rowPtr[r + 1] - 1, edge e is edgeCount[e] check-ins at venue
+ * edgeVenue[e]. Users and venues are dense indices into userIds and venueIds, numbered in order of first appearance.
+ * @author tndoan
+ *
+ */
+public class CheckinEdges {
+
+	private final String[] userIds;
+	private final String[] venueIds;
+
+	private final int numRows;
+	private final int[] rowUser;
+	private final int[] rowPtr;
+
+	private final int[] edgeVenue;
+	private final int[] edgeCount;
+
+	/**
+	 *
+	 * @param userIds
+	 * @param venueIds
+	 * @param numRows
+	 * @param rowUser	user of each row; may be longer than numRows
+	 * @param rowPtr	first edge of each row and number of edges at index numRows
+	 * @param edgeVenue
+	 * @param edgeCount
+	 */
+	public CheckinEdges(String[] userIds, String[] venueIds, int numRows, int[] rowUser, int[] rowPtr,
+			int[] edgeVenue, int[] edgeCount) {
+		this.userIds = userIds;
+		this.venueIds = venueIds;
+		this.numRows = numRows;
+		this.rowUser = rowUser;
+		this.rowPtr = rowPtr;
+		this.edgeVenue = edgeVenue;
+		this.edgeCount = edgeCount;
+	}
+
+	public String[] getUserIds() {
+		return userIds;
+	}
+
+	public String[] getVenueIds() {
+		return venueIds;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getNumEdges() {
+		return rowPtr[numRows];
+	}
+
+	public int[] getRowUser() {
+		return rowUser;
+	}
+
+	public int[] getRowPtr() {
+		return rowPtr;
+	}
+
+	public int[] getEdgeVenue() {
+		return edgeVenue;
+	}
+
+	public int[] getEdgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * same result as {@link ReadFile#readNumCksFile(String)} on the same file: if a user has several lines, the last one
+	 * is kept, and if a venue is repeated in a line, its last count is kept
+	 * @return	hashmap whose key is user id and value is map (key venue id, value is # of cks between user and venue)
+	 */
+	public HashMap<String, HashMap<String, Integer>> toMap() {
+		HashMap<String, HashMap<String, Integer>> result = new HashMap<>();
+		for (int r = 0; r < numRows; r++) {
+			HashMap<String, Integer> map = new HashMap<>();
+			for (int e = rowPtr[r]; e < rowPtr[r + 1]; e++)
+				map.put(venueIds[edgeVenue[e]], edgeCount[e]);
+			result.put(userIds[rowUser[r]], map);
+		}
+		return result;
+	}
+}
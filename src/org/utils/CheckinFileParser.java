@@ -0,0 +1,244 @@
+package org.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Parser of check-in files which maps the file into memory and scans its bytes. Ids are looked up in
+ * {@link ByteIdTable} straight from the mapped bytes and counts are parsed digit by digit, so no String is made for a
+ * line or a token and check-ins are written into primitive arrays.
+ *
+ * Each line has the format
+ * <userId> <venueId>:<numCks> <venueId>:<numCks> <venueId>:<numCks> <venueId>:<numCks> ....
+ * Lines end with \n or \r\n; empty lines are skipped.
+ * The file is split into chunks at line boundaries which are mapped and parsed in parallel, see {@link LineChunks}.
+ * @author tndoan
+ *
+ */
+public class CheckinFileParser {
+
+	/**
+	 * maximum size of one mapped chunk in bytes
+	 */
+	static final int MAX_CHUNK_SIZE = 1 << 30;
+
+	private final ByteIdTable users = new ByteIdTable();
+	private final ByteIdTable venues = new ByteIdTable();
+
+	private int numRows;
+	private int[] rowUser;
+	private int[] rowPtr;
+
+	private int numEdges;
+	private int[] edgeVenue;
+	private int[] edgeCount;
+
+	/**
+	 *
+	 * @param expectedEdges	initial capacity of edge arrays
+	 */
+	private CheckinFileParser(int expectedEdges) {
+		int edges = Math.max(expectedEdges, 16);
+		edgeVenue = new int[edges];
+		edgeCount = new int[edges];
+		int rows = Math.max(edges / 8, 16);
+		rowUser = new int[rows];
+		rowPtr = new int[rows + 1];
+	}
+
+	/**
+	 * parse the whole check-in file with all processors
+	 * @param filename
+	 * @return
+	 * @throws IOException	if the file cannot be read or a line is not well formed
+	 */
+	public static CheckinEdges parse(String filename) throws IOException {
+		return parse(filename, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * parse the whole check-in file. The file is split into chunks at line boundaries, chunks are parsed in parallel
+	 * and merged in order of chunks, so users, venues and edges get the same indices as in a sequential parse
+	 * @param filename
+	 * @param parallelism	number of threads which the file is split for
+	 * @return
+	 * @throws IOException	if the file cannot be read or a line is not well formed
+	 */
+	public static CheckinEdges parse(String filename, int parallelism) throws IOException {
+		return parse(filename, parallelism, MAX_CHUNK_SIZE);
+	}
+
+	/**
+	 *
+	 * @param filename
+	 * @param parallelism
+	 * @param maxChunkSize	maximum size of one mapped chunk in bytes
+	 * @return
+	 * @throws IOException
+	 */
+	static CheckinEdges parse(String filename, int parallelism, int maxChunkSize) throws IOException {
+		try (FileChannel fc = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			long[] bounds = LineChunks.split(fc, LineChunks.numChunks(fc.size(), parallelism, maxChunkSize));
+			int numChunks = bounds.length - 1;
+			for (int c = 0; c < numChunks; c++) {
+				if (bounds[c + 1] - bounds[c] > Integer.MAX_VALUE)
+					throw new IOException("line at byte " + bounds[c] + " is too long to be mapped");
+			}
+
+			CheckinFileParser[] parsers = new CheckinFileParser[numChunks];
+			try {
+				IntStream.range(0, numChunks).parallel().forEach(c -> {
+					int len = (int) (bounds[c + 1] - bounds[c]);
+					// one check-in takes around 8 bytes in text
+					CheckinFileParser parser = new CheckinFileParser(len / 8);
+					try {
+						MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, bounds[c], len);
+						parser.parseChunk(buf, len);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					parsers[c] = parser;
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			return merge(parsers);
+		}
+	}
+
+	/**
+	 * concatenate rows of parsers in order. Ids of each parser are added to the tables of the first one, so indices
+	 * are in order of first appearance over all chunks
+	 * @param parsers
+	 * @return
+	 */
+	private static CheckinEdges merge(CheckinFileParser[] parsers) {
+		CheckinFileParser first = parsers[0];
+		if (parsers.length == 1)
+			return first.result();
+
+		int numRows = 0, numEdges = 0;
+		for (CheckinFileParser p : parsers) {
+			numRows += p.numRows;
+			numEdges += p.numEdges;
+		}
+		int[] rowUser = new int[numRows];
+		int[] rowPtr = new int[numRows + 1];
+		int[] edgeVenue = new int[numEdges];
+		int[] edgeCount = new int[numEdges];
+
+		int r = 0, e = 0;
+		for (CheckinFileParser p : parsers) {
+			int[] userMap = p == first ? null : first.users.addAll(p.users);
+			int[] venueMap = p == first ? null : first.venues.addAll(p.venues);
+			for (int k = 0; k < p.numRows; k++) {
+				rowUser[r + k] = userMap == null ? p.rowUser[k] : userMap[p.rowUser[k]];
+				rowPtr[r + k] = e + p.rowPtr[k];
+			}
+			for (int k = 0; k < p.numEdges; k++) {
+				edgeVenue[e + k] = venueMap == null ? p.edgeVenue[k] : venueMap[p.edgeVenue[k]];
+				edgeCount[e + k] = p.edgeCount[k];
+			}
+			r += p.numRows;
+			e += p.numEdges;
+		}
+		rowPtr[numRows] = numEdges;
+		return new CheckinEdges(first.users.toArray(), first.venues.toArray(), numRows, rowUser, rowPtr, edgeVenue,
+				edgeCount);
+	}
+
+	/**
+	 * parse all lines of a chunk
+	 * @param buf
+	 * @param n			size of chunk
+	 * @throws IOException
+	 */
+	private void parseChunk(MappedByteBuffer buf, int n) throws IOException {
+		int p = 0;
+		while (p < n) {
+			int eol = p;
+			while (eol < n && buf.get(eol) != '\n')
+				eol++;
+			int end = eol;
+			if (end > p && buf.get(end - 1) == '\r')
+				end--;
+			parseLine(buf, p, end);
+			p = eol + 1;
+		}
+	}
+
+	/**
+	 * parse one line without its line break
+	 * @param buf
+	 * @param from
+	 * @param to
+	 * @throws IOException
+	 */
+	private void parseLine(MappedByteBuffer buf, int from, int to) throws IOException {
+		if (from == to)
+			return;
+		int k = from;
+		while (k < to && buf.get(k) != ' ')
+			k++;
+		int user = users.getOrAdd(buf, from, k);
+
+		if (numRows + 1 == rowUser.length) {
+			rowUser = Arrays.copyOf(rowUser, 2 * rowUser.length);
+			rowPtr = Arrays.copyOf(rowPtr, rowUser.length + 1);
+		}
+		rowUser[numRows] = user;
+		rowPtr[numRows] = numEdges;
+
+		while (k < to) {
+			// skip separators
+			while (k < to && buf.get(k) == ' ')
+				k++;
+			if (k == to)
+				break;
+
+			int idStart = k;
+			while (k < to && buf.get(k) != ':' && buf.get(k) != ' ')
+				k++;
+			if (k == to || buf.get(k) != ':')
+				throw new IOException("missing number of check-ins in line of user " + users.get(user));
+			int venue = venues.getOrAdd(buf, idStart, k);
+			k++;
+
+			boolean isNegative = k < to && buf.get(k) == '-';
+			if (isNegative || (k < to && buf.get(k) == '+'))
+				k++;
+			int digitStart = k;
+			int count = 0;
+			while (k < to && buf.get(k) != ' ') {
+				int d = buf.get(k) - '0';
+				if (d < 0 || d > 9)
+					throw new IOException("bad number of check-ins in line of user " + users.get(user));
+				count = count * 10 + d;
+				k++;
+			}
+			if (k == digitStart)
+				throw new IOException("missing number of check-ins in line of user " + users.get(user));
+
+			if (numEdges == edgeVenue.length) {
+				edgeVenue = Arrays.copyOf(edgeVenue, 2 * numEdges);
+				edgeCount = Arrays.copyOf(edgeCount, 2 * numEdges);
+			}
+			edgeVenue[numEdges] = venue;
+			edgeCount[numEdges] = isNegative ? -count : count;
+			numEdges++;
+		}
+
+		numRows++;
+		rowPtr[numRows] = numEdges;
+	}
+
+	private CheckinEdges result() {
+		return new CheckinEdges(users.toArray(), venues.toArray(), numRows, rowUser, rowPtr, edgeVenue, edgeCount);
+	}
+}
@@ -0,0 +1,67 @@
+package org.utils;
+
+/**
+ * Sum of doubles with Neumaier compensated summation. The rounding error of each addition is kept in a
+ * separate term so that the result does not depend much on the magnitude of the partial sums.
+ * @author tndoan
+ *
+ */
+public class CompensatedSum {
+
+	/**
+	 * running sum
+	 */
+	private double sum;
+
+	/**
+	 * running compensation of the lost low-order bits
+	 */
+	private double c;
+
+	/**
+	 * add a value to the sum
+	 * @param x	value
+	 */
+	public void add(double x) {
+		double t = sum + x;
+		if (Math.abs(sum) >= Math.abs(x))
+			c += (sum - t) + x;
+		else
+			c += (x - t) + sum;
+		sum = t;
+	}
+
+	/**
+	 * add another compensated sum to this sum
+	 * @param other
+	 */
+	public void add(CompensatedSum other) {
+		add(other.sum);
+		add(other.c);
+	}
+
+	/**
+	 * make this sum equal to another sum
+	 * @param other
+	 */
+	public void set(CompensatedSum other) {
+		sum = other.sum;
+		c = other.c;
+	}
+
+	/**
+	 * set the sum to 0
+	 */
+	public void reset() {
+		sum = 0.0;
+		c = 0.0;
+	}
+
+	/**
+	 * 
+	 * @return	the compensated sum
+	 */
+	public double value() {
+		return sum + c;
+	}
+}
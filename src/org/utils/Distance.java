@@ -24,6 +24,21 @@ public class Distance {
 		return x*x + y*y;
 	}
 	
+	/**
+	 * 
+	 * @param lat1
+	 * @param lng1
+	 * @param lat2
+	 * @param lng2
+	 * @return		Square of Euclidean distance between 2 points given by their coordinates
+	 */
+	public static double calSqEuDistance(double lat1, double lng1, double lat2, double lng2) {
+		double x = lat1 - lat2;
+		double y = lng1 - lng2;
+		
+		return x*x + y*y;
+	}
+	
 	/**
 	 * 
 	 * @param p1
@@ -0,0 +1,229 @@
+package org.utils;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Points grouped by the cells of a regular grid of numLat rows and numLng columns. Cell (i, j) has the row-major key
+ * i * numLng + j. Non-empty cells get dense indices in ascending order of key and points of each cell are kept in one
+ * int array in ascending order of point index, so a grid costs a few ints per point instead of a String id and a Set
+ * per cell.
+ *
+ * Keys are mapped to cells with a dense table when the grid has not many more cells than points, and with an open
+ * addressing table of long keys otherwise, so memory does not grow with the size of the grid.
+ * Neighbor cells are visited with {@link #DI} and {@link #DJ} without allocation.
+ * @author tndoan
+ *
+ */
+public class GridCells {
+
+	/**
+	 * offsets of the 8 surrounding cells, in the order of {@link Utils#getNeighborArea(int, int, int, int)}
+	 */
+	public static final int[] DI = { -1, 0, 1, 0, -1, -1, 1, 1 };
+	public static final int[] DJ = { 0, -1, 0, 1, 1, -1, -1, 1 };
+
+	private final int numLat;
+	private final int numLng;
+
+	/**
+	 * keys of non-empty cells in ascending order
+	 */
+	private final long[] keys;
+
+	/**
+	 * points of cell c are points[start[c]] .. points[start[c + 1] - 1]
+	 */
+	private final int[] start;
+	private final int[] points;
+
+	/**
+	 * cell + 1 of each key of the grid, 0 if empty; null if the open addressing table is used
+	 */
+	private final int[] dense;
+
+	/**
+	 * open addressing table: key of slot and cell + 1, 0 if slot is empty
+	 */
+	private final long[] slotKeys;
+	private final int[] slotCells;
+
+	/**
+	 *
+	 * @param rows		row of each point in [0, numLat)
+	 * @param cols		column of each point in [0, numLng)
+	 * @param numLat	number of rows
+	 * @param numLng	number of columns
+	 */
+	public GridCells(int[] rows, int[] cols, int numLat, int numLng) {
+		this(rows, cols, numLat, numLng, false);
+	}
+
+	/**
+	 *
+	 * @param rows		row of each point in [0, numLat)
+	 * @param cols		column of each point in [0, numLng)
+	 * @param numLat	number of rows
+	 * @param numLng	number of columns
+	 * @param parallel	true -> keys are computed, sorted and looked up on many threads; cells are the same
+	 */
+	public GridCells(int[] rows, int[] cols, int numLat, int numLng, boolean parallel) {
+		this.numLat = numLat;
+		this.numLng = numLng;
+		int n = rows.length;
+
+		long[] pointKeys = new long[n];
+		range(n, parallel).forEach(p -> {
+			if (rows[p] < 0 || rows[p] >= numLat || cols[p] < 0 || cols[p] >= numLng)
+				throw new IllegalArgumentException("point " + p + " is out of the grid: " + rows[p] + "," + cols[p]);
+			pointKeys[p] = key(rows[p], cols[p]);
+		});
+
+		// keys of non-empty cells
+		long[] sorted = pointKeys.clone();
+		if (parallel)
+			Arrays.parallelSort(sorted);
+		else
+			Arrays.sort(sorted);
+		int numCells = 0;
+		for (int p = 0; p < n; p++) {
+			if (p == 0 || sorted[p] != sorted[p - 1])
+				sorted[numCells++] = sorted[p];
+		}
+		keys = Arrays.copyOf(sorted, numCells);
+
+		if ((long) numLat * numLng <= 4L * n + 1024) {
+			dense = new int[numLat * numLng];
+			for (int c = 0; c < numCells; c++)
+				dense[(int) keys[c]] = c + 1;
+			slotKeys = null;
+			slotCells = null;
+		} else {
+			dense = null;
+			int size = Integer.highestOneBit(Math.max(1, 2 * numCells - 1)) << 1;
+			slotKeys = new long[size];
+			slotCells = new int[size];
+			for (int c = 0; c < numCells; c++) {
+				int s = slot(keys[c]);
+				while (slotCells[s] != 0)
+					s = (s + 1) & (size - 1);
+				slotKeys[s] = keys[c];
+				slotCells[s] = c + 1;
+			}
+		}
+
+		// counting sort of points by cell keeps ascending point order inside cells
+		int[] cellOf = new int[n];
+		range(n, parallel).forEach(p -> cellOf[p] = indexOf(pointKeys[p]));
+		start = new int[numCells + 1];
+		for (int p = 0; p < n; p++)
+			start[cellOf[p] + 1]++;
+		for (int c = 0; c < numCells; c++)
+			start[c + 1] += start[c];
+		int[] fill = Arrays.copyOf(start, numCells);
+		points = new int[n];
+		for (int p = 0; p < n; p++)
+			points[fill[cellOf[p]]++] = p;
+	}
+
+	/**
+	 *
+	 * @param i	row
+	 * @param j	column
+	 * @return	row-major key of cell
+	 */
+	public long key(int i, int j) {
+		return (long) i * numLng + j;
+	}
+
+	/**
+	 *
+	 * @return	number of non-empty cells
+	 */
+	public int getNumCells() {
+		return keys.length;
+	}
+
+	/**
+	 *
+	 * @param c	index of non-empty cell
+	 * @return	key of cell
+	 */
+	public long getKey(int c) {
+		return keys[c];
+	}
+
+	public int getRow(int c) {
+		return (int) (keys[c] / numLng);
+	}
+
+	public int getCol(int c) {
+		return (int) (keys[c] % numLng);
+	}
+
+	/**
+	 *
+	 * @param i	row, may be out of the grid
+	 * @param j	column, may be out of the grid
+	 * @return	index of cell; -1 if the cell is out of the grid or empty
+	 */
+	public int cellAt(int i, int j) {
+		if (i < 0 || i >= numLat || j < 0 || j >= numLng)
+			return -1;
+		return indexOf(key(i, j));
+	}
+
+	/**
+	 *
+	 * @param c	index of non-empty cell
+	 * @return	first position of points of cell
+	 */
+	public int start(int c) {
+		return start[c];
+	}
+
+	/**
+	 *
+	 * @param c	index of non-empty cell
+	 * @return	end of points of cell, exclusive
+	 */
+	public int end(int c) {
+		return start[c + 1];
+	}
+
+	/**
+	 *
+	 * @param k	position between start and end of a cell
+	 * @return	index of point
+	 */
+	public int point(int k) {
+		return points[k];
+	}
+
+	/**
+	 *
+	 * @param key
+	 * @return	index of cell with this key; -1 if it is empty
+	 */
+	private int indexOf(long key) {
+		if (dense != null)
+			return dense[(int) key] - 1;
+		int mask = slotKeys.length - 1;
+		for (int s = slot(key); ; s = (s + 1) & mask) {
+			if (slotCells[s] == 0)
+				return -1;
+			if (slotKeys[s] == key)
+				return slotCells[s] - 1;
+		}
+	}
+
+	private static IntStream range(int n, boolean parallel) {
+		IntStream s = IntStream.range(0, n);
+		return parallel ? s.parallel() : s;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32)) & (slotKeys.length - 1);
+	}
+}
@@ -0,0 +1,140 @@
+package org.utils;
+
+import java.util.Arrays;
+
+/**
+ * Dictionary of ids of users, venues or areas. Each distinct id gets a dense index 0, 1, 2, ... in order of first
+ * appearance and one canonical String which is shared by every structure that refers to the id. Indices are kept in
+ * an open addressing table of ints, so lookups do not box.
+ *
+ * Adding ids is not thread safe; lookups can be done by many threads once all ids are added.
+ * @author tndoan
+ *
+ */
+public class IdDictionary {
+
+	/**
+	 * canonical String of each index
+	 */
+	private String[] ids;
+	private int size;
+
+	/**
+	 * open addressing table; slot holds index of id + 1, 0 if empty
+	 */
+	private int[] slots;
+
+	public IdDictionary() {
+		this(16);
+	}
+
+	/**
+	 *
+	 * @param ids	distinct ids; id ids[i] gets index i and ids[i] becomes its canonical String
+	 * @throws IllegalArgumentException	if an id repeats
+	 */
+	public IdDictionary(String[] ids) {
+		this(ids.length);
+		for (String id : ids) {
+			if (getOrAdd(id) != size - 1)
+				throw new IllegalArgumentException("duplicated id: " + id);
+		}
+	}
+
+	private IdDictionary(int capacity) {
+		int n = Math.max(16, Integer.highestOneBit(Math.max(1, 2 * capacity - 1)) << 1);
+		ids = new String[n / 2];
+		slots = new int[n];
+	}
+
+	/**
+	 *
+	 * @return	number of distinct ids
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @param id
+	 * @return	index of id; -1 if id is not in the dictionary
+	 */
+	public int indexOf(String id) {
+		int mask = slots.length - 1;
+		for (int s = hash(id) & mask; ; s = (s + 1) & mask) {
+			int i = slots[s] - 1;
+			if (i < 0)
+				return -1;
+			if (ids[i].equals(id))
+				return i;
+		}
+	}
+
+	/**
+	 * index of id; the id is added if it is new
+	 * @param id
+	 * @return
+	 */
+	public int getOrAdd(String id) {
+		int i = indexOf(id);
+		if (i >= 0)
+			return i;
+		if (size == ids.length)
+			ids = Arrays.copyOf(ids, 2 * size);
+		i = size++;
+		ids[i] = id;
+		if (2 * size > slots.length)
+			rehash();
+		else
+			insert(i);
+		return i;
+	}
+
+	/**
+	 * canonical String of id; the id is added if it is new
+	 * @param id
+	 * @return	the String which was added first for this id
+	 */
+	public String intern(String id) {
+		// getOrAdd may grow ids, so read the array after it returns
+		int i = getOrAdd(id);
+		return ids[i];
+	}
+
+	/**
+	 *
+	 * @param i	index of id
+	 * @return	canonical String of id
+	 */
+	public String get(int i) {
+		return ids[i];
+	}
+
+	/**
+	 *
+	 * @return	canonical Strings of all ids, in order of index
+	 */
+	public String[] toArray() {
+		return Arrays.copyOf(ids, size);
+	}
+
+	private void insert(int i) {
+		int mask = slots.length - 1;
+		int s = hash(ids[i]) & mask;
+		while (slots[s] != 0)
+			s = (s + 1) & mask;
+		slots[s] = i + 1;
+	}
+
+	private void rehash() {
+		slots = new int[2 * slots.length];
+		for (int i = 0; i < size; i++)
+			insert(i);
+	}
+
+	private static int hash(String id) {
+		int h = id.hashCode() * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+}
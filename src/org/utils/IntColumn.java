@@ -0,0 +1,155 @@
+package org.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Array of ints which is either on the heap or off the heap: in direct memory or mapped from a file. Off-heap values
+ * are little endian and split into segments of 2^28 ints (1 GiB), since one buffer cannot hold more than 2^31 bytes.
+ * Off-heap columns are not scanned by the garbage collector and mapped ones are paged in by the OS when they are read.
+ * Columns are read only.
+ * @author tndoan
+ *
+ */
+public final class IntColumn {
+
+	private static final int SEGMENT_SHIFT = 28;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	/**
+	 * values on the heap; null if the column is off the heap
+	 */
+	private final int[] heap;
+
+	/**
+	 * values off the heap; null if the column is on the heap
+	 */
+	private final IntBuffer[] segments;
+
+	private final int length;
+
+	private IntColumn(int[] heap, IntBuffer[] segments, int length) {
+		this.heap = heap;
+		this.segments = segments;
+		this.length = length;
+	}
+
+	/**
+	 *
+	 * @param values	used, not copied
+	 * @return
+	 */
+	public static IntColumn onHeap(int[] values) {
+		return new IntColumn(values, null, values.length);
+	}
+
+	/**
+	 * copy values to direct memory
+	 * @param column
+	 * @return
+	 */
+	public static IntColumn direct(IntColumn column) {
+		IntBuffer[] segments = new IntBuffer[numSegments(column.length)];
+		for (int s = 0; s < segments.length; s++) {
+			int len = segmentLength(column.length, s);
+			IntBuffer buf = ByteBuffer.allocateDirect(4 * len).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			for (int i = 0; i < len; i++)
+				buf.put(i, column.get((s << SEGMENT_SHIFT) + i));
+			segments[s] = buf;
+		}
+		return new IntColumn(null, segments, column.length);
+	}
+
+	/**
+	 * map little endian ints of a file. The mapping stays valid after the channel is closed
+	 * @param fc
+	 * @param pos		position of the first int in bytes
+	 * @param length	number of ints
+	 * @return
+	 * @throws IOException	if the file ends before
+	 */
+	public static IntColumn map(FileChannel fc, long pos, int length) throws IOException {
+		if (pos + 4L * length > fc.size())
+			throw new IOException("file is truncated");
+		IntBuffer[] segments = new IntBuffer[numSegments(length)];
+		for (int s = 0; s < segments.length; s++) {
+			long start = pos + 4L * ((long) s << SEGMENT_SHIFT);
+			segments[s] = fc.map(FileChannel.MapMode.READ_ONLY, start, 4L * segmentLength(length, s))
+					.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		}
+		return new IntColumn(null, segments, length);
+	}
+
+	public int length() {
+		return length;
+	}
+
+	/**
+	 *
+	 * @return	true if values are in direct memory or mapped from a file
+	 */
+	public boolean isOffHeap() {
+		return heap == null;
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @return	i-th value
+	 */
+	public int get(int i) {
+		if (heap != null)
+			return heap[i];
+		return segments[i >>> SEGMENT_SHIFT].get(i & SEGMENT_MASK);
+	}
+
+	/**
+	 * search value in [from, to) which is sorted in ascending order
+	 * @param from
+	 * @param to
+	 * @param key
+	 * @return	index of key; (-(insertion point) - 1) if key is not found
+	 */
+	public int binarySearch(int from, int to, int key) {
+		int lo = from, hi = to - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int x = get(mid);
+			if (x < key)
+				lo = mid + 1;
+			else if (x > key)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -(lo + 1);
+	}
+
+	/**
+	 * copy values from the i-th one to an array
+	 * @param from
+	 * @param dst
+	 * @param off	first index of dst
+	 * @param len	number of values
+	 */
+	public void get(int from, int[] dst, int off, int len) {
+		if (heap != null) {
+			System.arraycopy(heap, from, dst, off, len);
+			return;
+		}
+		for (int k = 0; k < len; k++)
+			dst[off + k] = get(from + k);
+	}
+
+	private static int numSegments(int length) {
+		return (int) (((long) length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+	}
+
+	private static int segmentLength(int length, int s) {
+		return Math.min(SEGMENT_SIZE, length - (s << SEGMENT_SHIFT));
+	}
+}
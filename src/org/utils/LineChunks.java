@@ -0,0 +1,81 @@
+package org.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Split a text file into chunks which begin at the beginning of a line, so that chunks can be parsed independently.
+ * @author tndoan
+ *
+ */
+public class LineChunks {
+
+	/**
+	 * chunks are not made smaller than this number of bytes
+	 */
+	public static final int MIN_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * number of chunks for a file: at least 4 chunks for each thread so that threads are balanced, but no chunk is
+	 * smaller than {@link #MIN_CHUNK_SIZE} or larger than maxChunkSize
+	 * @param size			size of file in bytes
+	 * @param parallelism	number of threads
+	 * @param maxChunkSize
+	 * @return
+	 */
+	public static int numChunks(long size, int parallelism, int maxChunkSize) {
+		long bySize = (size + maxChunkSize - 1) / maxChunkSize;
+		long byThreads = Math.min(4L * parallelism, (size + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE);
+		return (int) Math.max(1, Math.max(bySize, byThreads));
+	}
+
+	/**
+	 * boundaries of chunks; chunk c is [bounds[c], bounds[c + 1]). Each boundary is the first byte after a line break
+	 * at or after an even split of the file, so a chunk may be empty only if the file has very long lines; empty
+	 * chunks are dropped
+	 * @param fc
+	 * @param numChunks	wanted number of chunks
+	 * @return
+	 * @throws IOException
+	 */
+	public static long[] split(FileChannel fc, int numChunks) throws IOException {
+		long size = fc.size();
+		long[] bounds = new long[numChunks + 1];
+		int n = 1;
+		ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+		for (int c = 1; c < numChunks; c++) {
+			long pos = lineStart(fc, Math.max(size / numChunks * c, bounds[n - 1]), buf);
+			if (pos > bounds[n - 1] && pos < size)
+				bounds[n++] = pos;
+		}
+		bounds[n++] = size;
+		return Arrays.copyOf(bounds, n);
+	}
+
+	/**
+	 *
+	 * @param fc
+	 * @param pos
+	 * @param buf
+	 * @return	first position p >= pos which is the beginning of a line, size of file if there is none
+	 * @throws IOException
+	 */
+	private static long lineStart(FileChannel fc, long pos, ByteBuffer buf) throws IOException {
+		if (pos == 0)
+			return 0;
+		long p = pos - 1; // the byte before a line has to be a line break
+		while (true) {
+			buf.clear();
+			int n = fc.read(buf, p);
+			if (n <= 0)
+				return fc.size();
+			for (int k = 0; k < n; k++) {
+				if (buf.get(k) == '\n')
+					return p + k + 1;
+			}
+			p += n;
+		}
+	}
+}
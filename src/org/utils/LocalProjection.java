@@ -0,0 +1,214 @@
+package org.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.object.PointObject;
+
+/**
+ * Local equirectangular projection of latitude and longitude to meters around a reference point:
+ * x = R (lng - lng0) cos(lat0), y = R (lat - lat0). Points are projected once and the distance of two points is then
+ * sqrt(dx^2 + dy^2), so a distance check is a few multiply-adds instead of the trigonometric calls of
+ * {@link Distance#calculateDistance(PointObject, PointObject)}.
+ *
+ * The projection is meant for data of the extent of a city. Its error grows with the distance of the two points and
+ * with their distance in latitude from the reference; {@link #validate(PointObject[], double, int, long)} reports the
+ * error against the haversine distance for a data set. Longitudes are not wrapped, so data must not cross longitude 180.
+ * @author tndoan
+ *
+ */
+public class LocalProjection {
+
+	private static final double EARTH_RADIUS = Distance.AVERAGE_RADIUS_OF_EARTH * 1000.0;
+
+	private final double lat0;
+	private final double lng0;
+
+	/**
+	 * meters per degree of longitude and of latitude
+	 */
+	private final double mx;
+	private final double my;
+
+	/**
+	 *
+	 * @param lat0	latitude of reference point
+	 * @param lng0	longitude of reference point
+	 */
+	public LocalProjection(double lat0, double lng0) {
+		this.lat0 = lat0;
+		this.lng0 = lng0;
+		my = Math.toRadians(EARTH_RADIUS);
+		mx = my * Math.cos(Math.toRadians(lat0));
+	}
+
+	/**
+	 *
+	 * @param points
+	 * @return	projection around the center of the bounding box of points
+	 */
+	public static LocalProjection around(PointObject[] points) {
+		double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+		double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+		for (PointObject p : points) {
+			minLat = Math.min(minLat, p.getLat());
+			maxLat = Math.max(maxLat, p.getLat());
+			minLng = Math.min(minLng, p.getLng());
+			maxLng = Math.max(maxLng, p.getLng());
+		}
+		if (points.length == 0)
+			return new LocalProjection(0.0, 0.0);
+		return new LocalProjection((minLat + maxLat) / 2.0, (minLng + maxLng) / 2.0);
+	}
+
+	public double getLat0() {
+		return lat0;
+	}
+
+	public double getLng0() {
+		return lng0;
+	}
+
+	/**
+	 *
+	 * @param lng	longitude
+	 * @return		x in meter
+	 */
+	public double x(double lng) {
+		return (lng - lng0) * mx;
+	}
+
+	/**
+	 *
+	 * @param lat	latitude
+	 * @return		y in meter
+	 */
+	public double y(double lat) {
+		return (lat - lat0) * my;
+	}
+
+	/**
+	 *
+	 * @param points
+	 * @return	x of each point in meter
+	 */
+	public double[] projectX(PointObject[] points) {
+		double[] x = new double[points.length];
+		for (int i = 0; i < points.length; i++)
+			x[i] = x(points[i].getLng());
+		return x;
+	}
+
+	/**
+	 *
+	 * @param points
+	 * @return	y of each point in meter
+	 */
+	public double[] projectY(PointObject[] points) {
+		double[] y = new double[points.length];
+		for (int i = 0; i < points.length; i++)
+			y[i] = y(points[i].getLat());
+		return y;
+	}
+
+	/**
+	 *
+	 * @param p1
+	 * @param p2
+	 * @return	distance in meter between 2 points in the projection
+	 */
+	public double distance(PointObject p1, PointObject p2) {
+		double dx = (p1.getLng() - p2.getLng()) * mx;
+		double dy = (p1.getLat() - p2.getLat()) * my;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * error of the projection against the haversine distance, over pairs of points closer than maxDistance
+	 */
+	public static class Error {
+		/**
+		 * largest absolute error in meter, and the largest one relative to the haversine distance
+		 */
+		public double maxAbsError;
+		public double maxRelError;
+
+		/**
+		 * number of pairs which are compared
+		 */
+		public long numPairs;
+
+		@Override
+		public String toString() {
+			return "pairs:" + numPairs + "\tmax error (m):" + maxAbsError + "\tmax relative error:" + maxRelError;
+		}
+	}
+
+	/**
+	 * compare the projection with the haversine distance. Each point is compared with the points closer than
+	 * maxDistance, found by a {@link SpatialIndex}; if there are more than maxPairs pairs, a random sample of points is
+	 * compared with all of their close points
+	 * @param points
+	 * @param maxDistance	in meter, e.g. the threshold of neighbors
+	 * @param maxPairs		about the largest number of pairs to compare
+	 * @param seed			seed of the sample
+	 * @return
+	 */
+	public Error validate(PointObject[] points, double maxDistance, int maxPairs, long seed) {
+		Error error = new Error();
+		if (points.length == 0)
+			return error;
+		SpatialIndex index = new SpatialIndex(points, maxDistance);
+
+		// sample points so that about maxPairs pairs are compared
+		int[] sample = new int[points.length];
+		for (int i = 0; i < sample.length; i++)
+			sample[i] = i;
+		Random r = new Random(seed);
+		for (int i = sample.length - 1; i > 0; i--) {
+			int j = r.nextInt(i + 1);
+			int t = sample[i];
+			sample[i] = sample[j];
+			sample[j] = t;
+		}
+
+		for (int i : sample) {
+			if (error.numPairs >= maxPairs)
+				break;
+			for (int j : index.withinRadius(i, maxDistance)) {
+				double h = Distance.calculateDistance(points[i], points[j]);
+				double e = Math.abs(distance(points[i], points[j]) - h);
+				error.maxAbsError = Math.max(error.maxAbsError, e);
+				if (h > 0)
+					error.maxRelError = Math.max(error.maxRelError, e / h);
+				error.numPairs++;
+			}
+		}
+		return error;
+	}
+
+	/**
+	 * report the error of the projection for the venues of a location file
+	 * @param args	venue location file, max distance in meter (default 1000), max number of pairs (default 10000000)
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("usage: LocalProjection venueLocFile [maxDistance] [maxPairs]");
+			return;
+		}
+		double maxDistance = args.length > 1 ? Double.parseDouble(args[1]) : 1000.0;
+		int maxPairs = args.length > 2 ? Integer.parseInt(args[2]) : 10000000;
+
+		HashMap<String, String> vInfo = ReadFile.readLocationParallel(args[0]);
+		ArrayList<PointObject> list = new ArrayList<>();
+		for (String loc : vInfo.values())
+			list.add(new PointObject(loc));
+		PointObject[] points = list.toArray(new PointObject[list.size()]);
+
+		LocalProjection projection = around(points);
+		System.out.println("reference:" + projection.getLat0() + "," + projection.getLng0() + "\tmax distance (m):"
+				+ maxDistance);
+		System.out.println(projection.validate(points, maxDistance, maxPairs, 0L));
+	}
+}
@@ -75,37 +75,36 @@ public class MakeAreaMap {
 		double base_min_lat = sw.getLat();
 		double base_min_lng = sw.getLng();
 		
-		int numLat = (int) (Math.abs(ne.getLat() - sw.getLat()) / scale);
-		int numLng = (int) (Math.abs(ne.getLng() - sw.getLng()) / scale);
-		
-		// I know it is not a good way to handle this case but maybe it works
-		// key is area id; value is set of venue id which is belong to this area
-		HashMap<String, Set<String>> venuesInArea = new HashMap<>();
-		
-		for (String vId : vMap.keySet()) {
-			VenueObject vo = vMap.get(vId);
-			PointObject loc = vo.getLocation();
-			
-			// cell id of this venue
-			int i = (int) Math.ceil((loc.getLat() - base_min_lat) / scale);
-			int j = (int) Math.ceil((loc.getLng() - base_min_lng) / scale);
-			
-			// area id of venue. Each venue is belong to only 1 area.
-			String areaIds = String.valueOf(i * numLat + j);
-			
-			vo.setAreaId(areaIds);
+		int numLat = Math.max(1, (int) (Math.abs(ne.getLat() - sw.getLat()) / scale));
+		int numLng = Math.max(1, (int) (Math.abs(ne.getLng() - sw.getLng()) / scale));
+		
+		// cell of each venue; venues on the border of the cover rectangle are put in the last row or column
+		String[] venueIds = vMap.keySet().toArray(new String[vMap.size()]);
+		int[] rows = new int[venueIds.length];
+		int[] cols = new int[venueIds.length];
+		for (int v = 0; v < venueIds.length; v++) {
+			PointObject loc = vMap.get(venueIds[v]).getLocation();
+			rows[v] = Math.min(numLat - 1, Math.max(0, (int) Math.floor((loc.getLat() - base_min_lat) / scale)));
+			cols[v] = Math.min(numLng - 1, Math.max(0, (int) Math.floor((loc.getLng() - base_min_lng) / scale)));
 		}
-		
-		// create area
-		for (int i = 0; i < numLat - 1; i++) {
-			for (int j = 0; j < numLng - 1; j++) {
-				String areaId = String.valueOf(i * j);
-				PointObject sub_ne = new PointObject(base_min_lat + (scale * (double)(i + 1)), base_min_lng + (scale * (double) (j + 1)));
-				PointObject sub_sw = new PointObject(base_min_lat + (scale * (double)(i)), base_min_lng + (scale * (double) (j)));
-				RectangleObject rObj = new RectangleObject(sub_ne, sub_sw);
-				AreaObject area = new AreaObject(areaId, 0, rObj.getCenter(), venuesInArea.get(areaId));
-				result.put(areaId, area);
+		GridCells cells = new GridCells(rows, cols, numLat, numLng);
+		
+		// create area of each non-empty cell. Each venue is belong to only 1 area; area id is the key of its cell
+		for (int c = 0; c < cells.getNumCells(); c++) {
+			int i = cells.getRow(c);
+			int j = cells.getCol(c);
+			String areaId = String.valueOf(cells.getKey(c));
+			Set<String> venuesInArea = new HashSet<>();
+			for (int k = cells.start(c); k < cells.end(c); k++) {
+				String vId = venueIds[cells.point(k)];
+				vMap.get(vId).setAreaId(areaId);
+				venuesInArea.add(vId);
 			}
+			PointObject sub_ne = new PointObject(base_min_lat + (scale * (double)(i + 1)), base_min_lng + (scale * (double) (j + 1)));
+			PointObject sub_sw = new PointObject(base_min_lat + (scale * (double)(i)), base_min_lng + (scale * (double) (j)));
+			RectangleObject rObj = new RectangleObject(sub_ne, sub_sw);
+			AreaObject area = new AreaObject(areaId, 0, rObj.getCenter(), venuesInArea);
+			result.put(areaId, area);
 		}
 				
 		return result;
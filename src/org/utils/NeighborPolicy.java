@@ -0,0 +1,181 @@
+package org.utils;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.object.PointObject;
+
+/**
+ * Which venues compete with each other: the k nearest venues, the venues within a distance, or the k nearest venues
+ * within a distance. Neighbors are found with a {@link SpatialIndex}, so each venue has a bounded number of neighbors
+ * instead of every venue of the surrounding boxes of {@link Utils#createNeighborsBox}.
+ *
+ * The competition terms of the log likelihood assume that v is a neighbor of n when n is a neighbor of v, so nearest
+ * neighbors are made symmetric: u and v are neighbors if either one is among the k nearest of the other. A venue then
+ * has k neighbors of its own plus the venues which have it among their k nearest, which is a small multiple of k in
+ * the plane.
+ *
+ * Distances are haversine distances unless a {@link LocalProjection} is given, see {@link #projected(LocalProjection)}.
+ * @author tndoan
+ *
+ */
+public class NeighborPolicy {
+
+	/**
+	 * maximum number of nearest venues; 0 -> no limit
+	 */
+	private final int k;
+
+	/**
+	 * in meter; Double.POSITIVE_INFINITY -> no limit
+	 */
+	private final double radius;
+
+	/**
+	 * projection whose distance is used; null -> haversine distance
+	 */
+	private final LocalProjection projection;
+
+	private NeighborPolicy(int k, double radius, LocalProjection projection) {
+		this.k = k;
+		this.radius = radius;
+		this.projection = projection;
+	}
+
+	/**
+	 *
+	 * @param k	number of nearest venues
+	 * @return
+	 */
+	public static NeighborPolicy nearest(int k) {
+		if (k <= 0)
+			throw new IllegalArgumentException("number of nearest venues must be positive: " + k);
+		return new NeighborPolicy(k, Double.POSITIVE_INFINITY, null);
+	}
+
+	/**
+	 *
+	 * @param radius	in meter
+	 * @return
+	 */
+	public static NeighborPolicy withinRadius(double radius) {
+		if (!(radius > 0) || Double.isInfinite(radius))
+			throw new IllegalArgumentException("radius must be positive and finite: " + radius);
+		return new NeighborPolicy(0, radius, null);
+	}
+
+	/**
+	 *
+	 * @param k			number of nearest venues
+	 * @param radius	in meter
+	 * @return
+	 */
+	public static NeighborPolicy nearestWithin(int k, double radius) {
+		if (k <= 0)
+			throw new IllegalArgumentException("number of nearest venues must be positive: " + k);
+		if (!(radius > 0) || Double.isInfinite(radius))
+			throw new IllegalArgumentException("radius must be positive and finite: " + radius);
+		return new NeighborPolicy(k, radius, null);
+	}
+
+	/**
+	 * the same policy with distances of a local projection, which are much cheaper than haversine distances for data
+	 * of the extent of a city
+	 * @param projection	e.g. {@link LocalProjection#around(PointObject[])} of the venues
+	 * @return
+	 */
+	public NeighborPolicy projected(LocalProjection projection) {
+		return new NeighborPolicy(k, radius, projection);
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	public double getRadius() {
+		return radius;
+	}
+
+	/**
+	 * neighbors of all points, computed on many threads
+	 * @param points
+	 * @return	neighbors of each point in ascending index order; null if a point has no neighbor
+	 */
+	public int[][] neighbors(PointObject[] points) {
+		if (points.length == 0)
+			return new int[0][];
+		if (k == 0)
+			return new SpatialIndex(points, radius, projection).allWithinRadius(radius);
+
+		SpatialIndex index = new SpatialIndex(points, Double.isInfinite(radius) ? cellSize(points) : radius, projection);
+		int[][] nearest = new int[points.length][];
+		IntStream.range(0, points.length).parallel().forEach(i -> nearest[i] = index.nearest(i, k, radius));
+		return symmetric(nearest);
+	}
+
+	/**
+	 * size of cells which hold about k points when points are spread evenly over their bounding box
+	 * @param points
+	 * @return	in meter
+	 */
+	private double cellSize(PointObject[] points) {
+		double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+		double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+		for (PointObject p : points) {
+			minLat = Math.min(minLat, p.getLat());
+			maxLat = Math.max(maxLat, p.getLat());
+			minLng = Math.min(minLng, p.getLng());
+			maxLng = Math.max(maxLng, p.getLng());
+		}
+		double metersPerDegree = Math.toRadians(Distance.AVERAGE_RADIUS_OF_EARTH * 1000.0);
+		double height = (maxLat - minLat) * metersPerDegree;
+		double width = (maxLng - minLng) * metersPerDegree * Math.cos(Math.toRadians((minLat + maxLat) / 2));
+		double size = Math.sqrt(height * width * k / points.length);
+		if (!(size > 1.0))
+			size = Math.max(1.0, Math.max(height, width) * k / points.length);
+		return size;
+	}
+
+	/**
+	 *
+	 * @param nearest	nearest points of each point in ascending order
+	 * @return			union of nearest points and of points which have the point among their nearest, in ascending
+	 * 					order; null if it is empty
+	 */
+	private static int[][] symmetric(int[][] nearest) {
+		int n = nearest.length;
+		// points which have i among their nearest, in ascending order as j goes up
+		int[] ptr = new int[n + 1];
+		for (int[] l : nearest)
+			for (int j : l)
+				ptr[j + 1]++;
+		for (int i = 0; i < n; i++)
+			ptr[i + 1] += ptr[i];
+		int[] reverse = new int[ptr[n]];
+		int[] fill = Arrays.copyOf(ptr, n);
+		for (int j = 0; j < n; j++)
+			for (int i : nearest[j])
+				reverse[fill[i]++] = j;
+
+		int[][] result = new int[n][];
+		IntStream.range(0, n).parallel().forEach(i -> {
+			int[] a = nearest[i];
+			int[] merged = new int[a.length + ptr[i + 1] - ptr[i]];
+			int x = 0, y = ptr[i], size = 0;
+			while (x < a.length || y < ptr[i + 1]) {
+				int next;
+				if (y == ptr[i + 1] || (x < a.length && a[x] < reverse[y]))
+					next = a[x++];
+				else if (x == a.length || reverse[y] < a[x])
+					next = reverse[y++];
+				else {
+					next = a[x++];
+					y++;
+				}
+				merged[size++] = next;
+			}
+			result[i] = size == 0 ? null : Arrays.copyOf(merged, size);
+		});
+		return result;
+	}
+}
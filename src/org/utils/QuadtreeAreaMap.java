@@ -0,0 +1,275 @@
+package org.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.object.AreaObject;
+import org.object.PointObject;
+import org.object.VenueObject;
+
+/**
+ * Areas from the leaves of an adaptive quadtree instead of the fixed-scale grid of
+ * {@link Utils#createNeighborsBox}. A cell is split into 4 until it holds at most maxVenues venues, so dense regions
+ * get small areas and sparse regions get large ones. Leaves play the role of the boxes of the grid: neighbors of a
+ * venue are the other venues of its leaf and the venues of the leaves which touch it, at an edge or at a corner.
+ *
+ * The tree is balanced so that leaves which touch differ by at most one level. A leaf then touches at most 12 leaves
+ * and a venue has at most 13 * maxVenues neighbors, whatever the density.
+ * @author tndoan
+ *
+ */
+public class QuadtreeAreaMap {
+
+	/**
+	 * cells are not split deeper, e.g. when more than maxVenues venues share one location
+	 */
+	public static final int MAX_DEPTH = 24;
+
+	private static class Node {
+		final double south, west, north, east;
+		final int depth;
+
+		/**
+		 * indices of venues of a leaf; null if node is split
+		 */
+		int[] venues;
+
+		/**
+		 * south west, south east, north west, north east; null if node is a leaf
+		 */
+		Node[] children;
+
+		/**
+		 * index of area of a non-empty leaf
+		 */
+		int area = -1;
+
+		Node(double south, double west, double north, double east, int depth, int[] venues) {
+			this.south = south;
+			this.west = west;
+			this.north = north;
+			this.east = east;
+			this.depth = depth;
+			this.venues = venues;
+		}
+
+		/**
+		 *
+		 * @param o
+		 * @return	true if the closed rectangles of the two nodes have a common point
+		 */
+		boolean touches(Node o) {
+			return south <= o.north && o.south <= north && west <= o.east && o.west <= east;
+		}
+	}
+
+	private final PointObject[] locations;
+	private final Node root;
+
+	/**
+	 *
+	 * @param locations	location of each venue
+	 * @param maxVenues	maximum number of venues in a leaf, unless it is at {@link #MAX_DEPTH}
+	 */
+	private QuadtreeAreaMap(PointObject[] locations, int maxVenues) {
+		this.locations = locations;
+		double south = Double.MAX_VALUE, west = Double.MAX_VALUE;
+		double north = -Double.MAX_VALUE, east = -Double.MAX_VALUE;
+		for (PointObject p : locations) {
+			south = Math.min(south, p.getLat());
+			north = Math.max(north, p.getLat());
+			west = Math.min(west, p.getLng());
+			east = Math.max(east, p.getLng());
+		}
+		int[] all = new int[locations.length];
+		for (int i = 0; i < all.length; i++)
+			all[i] = i;
+		root = new Node(south, west, north, east, 0, all);
+
+		// split cells which hold too many venues
+		ArrayDeque<Node> queue = new ArrayDeque<>();
+		queue.add(root);
+		while (!queue.isEmpty()) {
+			Node node = queue.poll();
+			if (node.venues.length > maxVenues && node.depth < MAX_DEPTH) {
+				split(node);
+				queue.addAll(Arrays.asList(node.children));
+			}
+		}
+
+		// balance: a leaf which touches a leaf two or more levels deeper is split
+		ArrayList<Node> leaves = new ArrayList<>();
+		collectLeaves(root, leaves);
+		queue.addAll(leaves);
+		while (!queue.isEmpty()) {
+			Node node = queue.poll();
+			if (node.children != null)
+				continue;
+			for (Node n : touchingLeaves(node)) {
+				if (n.depth < node.depth - 1) {
+					split(n);
+					queue.addAll(Arrays.asList(n.children));
+				}
+			}
+		}
+	}
+
+	/**
+	 * create venues and their neighbors, and areas from the leaves of a quadtree. It is used like
+	 * {@link Utils#createNeighborsBox}
+	 * @param vInfo				location of each venue
+	 * @param areaMap			filled with areas; id of area is the index of its leaf
+	 * @param countMap			number of check-ins of each venue
+	 * @param userOfVenueMap	users who have check-ins in each venue
+	 * @param maxVenues			maximum number of venues in an area
+	 * @param isAverageLoc		true -> location of area is the average locations of all venues in this area; false -> center of the cell
+	 * @return
+	 */
+	public static HashMap<String, VenueObject> createNeighbors(HashMap<String, PointObject> vInfo,
+			HashMap<String, AreaObject> areaMap, HashMap<String, Integer> countMap,
+			HashMap<String, ArrayList<String>> userOfVenueMap, int maxVenues, boolean isAverageLoc) {
+		if (maxVenues <= 0)
+			throw new IllegalArgumentException("maximum number of venues in an area must be positive: " + maxVenues);
+		// venues are sorted so that areas do not depend on the order of the map
+		String[] venueIds = vInfo.keySet().toArray(new String[vInfo.size()]);
+		Arrays.sort(venueIds);
+		PointObject[] locations = new PointObject[venueIds.length];
+		for (int i = 0; i < venueIds.length; i++)
+			locations[i] = vInfo.get(venueIds[i]);
+		if (venueIds.length == 0)
+			return new HashMap<>();
+
+		QuadtreeAreaMap tree = new QuadtreeAreaMap(locations, maxVenues);
+		ArrayList<Node> areas = new ArrayList<>();
+		tree.collectLeaves(tree.root, areas);
+		areas.removeIf(n -> n.venues.length == 0);
+		for (int a = 0; a < areas.size(); a++)
+			areas.get(a).area = a;
+
+		// create venue map. Neighbors of a venue are the venues of its leaf and of the leaves touching it
+		HashMap<String, VenueObject> venueMap = new HashMap<>();
+		for (Node leaf : areas) {
+			ArrayList<Node> touching = tree.touchingLeaves(leaf);
+			for (int v : leaf.venues) {
+				ArrayList<String> neighborIds = new ArrayList<>();
+				for (int n : leaf.venues) {
+					if (n != v)
+						neighborIds.add(venueIds[n]);
+				}
+				for (Node t : touching) {
+					for (int n : t.venues)
+						neighborIds.add(venueIds[n]);
+				}
+
+				Integer numCks = countMap.get(venueIds[v]);
+				if (numCks == null)
+					numCks = 0;
+				VenueObject vo = new VenueObject(venueIds[v], numCks, locations[v], neighborIds,
+						userOfVenueMap.get(venueIds[v]));
+				vo.setAreaId(String.valueOf(leaf.area));
+				venueMap.put(venueIds[v], vo);
+			}
+		}
+
+		// create area
+		for (Node leaf : areas) {
+			String areaId = String.valueOf(leaf.area);
+			double scope = 0.0;
+			double average_lat = 0.0;
+			double average_lng = 0.0;
+			Set<String> allVenueIds = new HashSet<>();
+			for (int v : leaf.venues) {
+				VenueObject vo = venueMap.get(venueIds[v]);
+				double s = vo.getInfluenceScope();
+				scope += s * s;
+				average_lat += locations[v].getLat();
+				average_lng += locations[v].getLng();
+				allVenueIds.add(venueIds[v]);
+			}
+			scope /= (double) leaf.venues.length;
+			average_lat /= (double) leaf.venues.length;
+			average_lng /= (double) leaf.venues.length;
+
+			PointObject aLoc;
+			if (isAverageLoc)
+				aLoc = new PointObject(average_lat, average_lng);
+			else
+				aLoc = new PointObject((leaf.south + leaf.north) / 2.0, (leaf.west + leaf.east) / 2.0);
+			areaMap.put(areaId, new AreaObject(areaId, Math.sqrt(scope), aLoc, allVenueIds));
+		}
+
+		return venueMap;
+	}
+
+	/**
+	 * split a leaf into 4 children at the middle of its cell
+	 * @param node
+	 */
+	private void split(Node node) {
+		double midLat = (node.south + node.north) / 2.0;
+		double midLng = (node.west + node.east) / 2.0;
+		int[] count = new int[4];
+		for (int v : node.venues)
+			count[quadrant(v, midLat, midLng)]++;
+		int[][] venues = new int[4][];
+		for (int q = 0; q < 4; q++)
+			venues[q] = new int[count[q]];
+		Arrays.fill(count, 0);
+		for (int v : node.venues) {
+			int q = quadrant(v, midLat, midLng);
+			venues[q][count[q]++] = v;
+		}
+		int d = node.depth + 1;
+		node.children = new Node[] { new Node(node.south, node.west, midLat, midLng, d, venues[0]),
+				new Node(node.south, midLng, midLat, node.east, d, venues[1]),
+				new Node(midLat, node.west, node.north, midLng, d, venues[2]),
+				new Node(midLat, midLng, node.north, node.east, d, venues[3]) };
+		node.venues = null;
+	}
+
+	/**
+	 *
+	 * @param v			index of venue
+	 * @param midLat
+	 * @param midLng
+	 * @return			0: south west, 1: south east, 2: north west, 3: north east
+	 */
+	private int quadrant(int v, double midLat, double midLng) {
+		return (locations[v].getLat() >= midLat ? 2 : 0) + (locations[v].getLng() >= midLng ? 1 : 0);
+	}
+
+	private void collectLeaves(Node node, ArrayList<Node> leaves) {
+		if (node.children == null) {
+			leaves.add(node);
+			return;
+		}
+		for (Node c : node.children)
+			collectLeaves(c, leaves);
+	}
+
+	/**
+	 *
+	 * @param leaf
+	 * @return	other leaves which touch the leaf at an edge or at a corner
+	 */
+	private ArrayList<Node> touchingLeaves(Node leaf) {
+		ArrayList<Node> result = new ArrayList<>();
+		ArrayDeque<Node> stack = new ArrayDeque<>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Node node = stack.pop();
+			if (node == leaf || !node.touches(leaf))
+				continue;
+			if (node.children == null)
+				result.add(node);
+			else
+				for (Node c : node.children)
+					stack.push(c);
+		}
+		return result;
+	}
+}
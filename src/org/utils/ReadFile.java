@@ -3,8 +3,16 @@ package org.utils;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.List;
 import java.util.ArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * All functions are used to read input files
@@ -13,6 +21,11 @@ import java.util.ArrayList;
  */
 public class ReadFile {
 	
+	/**
+	 * maximum size of one chunk of location file in bytes; a chunk is decoded into one String
+	 */
+	private static final int LOCATION_CHUNK_SIZE = 1 << 26;
+	
 	/**
 	 * each line has the format
 	 * <userId> <venueId>:<numCks> <venueId>:<numCks> <venueId>:<numCks> <venueId>:<numCks> ....
@@ -26,6 +39,8 @@ public class ReadFile {
 		{
 			result = new HashMap<>();
 			String sCurrentLine;
+			// one String for each venue id instead of one for each check-in
+			IdDictionary venueDict = new IdDictionary();
 
 			while ((sCurrentLine = br.readLine()) != null) {
 				String[] comp = sCurrentLine.split(" ");
@@ -34,7 +49,7 @@ public class ReadFile {
 				HashMap<String, Integer> map = new HashMap<>();
 				for (int i = 1; i < comp.length; i++){
 					String[] c = comp[i].split(":");
-					String venueId = c[0];
+					String venueId = venueDict.intern(c[0]);
 					int numCks = Integer.parseInt(c[1]);
 					map.put(venueId, numCks);
 				}
@@ -48,6 +63,32 @@ public class ReadFile {
 		return result;
 	}
 	
+	/**
+	 * same result as {@link #readNumCksFile(String)} but the file is parsed by {@link CheckinFileParser}, which maps the
+	 * file into memory, parses chunks of it in parallel and does not make Strings for lines and tokens
+	 * @param filename the name of file
+	 * @return	hashmap whose key is user id and value is map (key venue id, value is # of cks between user and venue)
+	 */
+	public static HashMap<String, HashMap<String, Integer>> readNumCksFileMapped(String filename){
+		CheckinEdges edges = readCheckinEdges(filename);
+		return edges == null ? null : edges.toMap();
+	}
+	
+	/**
+	 * check-ins parsed by {@link CheckinFileParser}, with one String for each distinct user and venue id
+	 * @param filename the name of file
+	 * @return	check-ins; null if the file cannot be read
+	 */
+	public static CheckinEdges readCheckinEdges(String filename){
+		CheckinEdges result = null;
+		try {
+			result = CheckinFileParser.parse(filename);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return result;
+	}
+	
 	/**
 	 * each line has the format
 	 * <venueId> <venueId_1> <venueId_2> <venueId_3> ...
@@ -111,4 +152,49 @@ public class ReadFile {
 		return result;
 	}
 	
+	/**
+	 * same result as {@link #readLocation(String)} but the file is split into chunks at line boundaries which are
+	 * parsed in parallel. Chunks are merged in order, so if an id has several lines the last one is kept. Empty lines
+	 * are skipped
+	 * @param filename
+	 * @return
+	 */
+	public static HashMap<String, String> readLocationParallel(String filename){
+		HashMap<String, String> result = null;
+		try (FileChannel fc = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+		{
+			int parallelism = Runtime.getRuntime().availableProcessors();
+			long[] bounds = LineChunks.split(fc, LineChunks.numChunks(fc.size(), parallelism, LOCATION_CHUNK_SIZE));
+			List<HashMap<String, String>> chunks = IntStream.range(0, bounds.length - 1).parallel().mapToObj(c -> {
+				String text;
+				try {
+					text = StandardCharsets.UTF_8.decode(
+							fc.map(FileChannel.MapMode.READ_ONLY, bounds[c], bounds[c + 1] - bounds[c])).toString();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				HashMap<String, String> map = new HashMap<>();
+				int p = 0;
+				while (p < text.length()) {
+					int eol = text.indexOf('\n', p);
+					if (eol < 0)
+						eol = text.length();
+					int end = eol > p && text.charAt(eol - 1) == '\r' ? eol - 1 : eol;
+					if (end > p) {
+						String[] comp = text.substring(p, end).split(" ");
+						map.put(comp[0], comp[1]);
+					}
+					p = eol + 1;
+				}
+				return map;
+			}).collect(Collectors.toList());
+
+			result = new HashMap<>();
+			for (HashMap<String, String> map : chunks)
+				result.putAll(map);
+		} catch (IOException | UncheckedIOException e) {
+			e.printStackTrace();
+		}
+		return result;
+	}
 }
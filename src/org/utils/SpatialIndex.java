@@ -0,0 +1,500 @@
+package org.utils;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.object.PointObject;
+
+/**
+ * Uniform grid over latitude and longitude for radius queries with the haversine distance of
+ * {@link Distance#calculateDistance(PointObject, PointObject)}. Cells are at least cellSize meters high and wide for
+ * every point of the index: the height comes from the latitude difference, which is a lower bound of the distance, and
+ * the width from the smallest cosine of latitude of the points. A radius query only computes the distances to points
+ * of the cells within the radius and keeps the points which the brute-force loop keeps, so results are exactly the same.
+ * Columns wrap around at longitude 180.
+ *
+ * With a {@link LocalProjection}, points are projected once to meters, cells are squares of cellSize meters and the
+ * distance is the one of the projection, checked as a square distance with multiply-adds only. Results then follow the
+ * projection instead of the haversine distance.
+ *
+ * Nearest queries visit rings of cells around the point until no unvisited point can be nearer; see
+ * {@link #nearest(int, int, double)}.
+ *
+ * Points are sorted by cell; a cell is found by binary search over the keys of non-empty cells.
+ * The index is read only once it is built, so queries can run on many threads.
+ * @author tndoan
+ *
+ */
+public class SpatialIndex {
+
+	private static final double EARTH_RADIUS = Distance.AVERAGE_RADIUS_OF_EARTH * 1000.0;
+
+	/**
+	 * relative margin on sizes of cells against rounding of the distance
+	 */
+	private static final double MARGIN = 1e-6;
+
+	private final PointObject[] points;
+
+	/**
+	 * projection of points; null if the haversine distance is used
+	 */
+	private final LocalProjection projection;
+
+	/**
+	 * projected points in meter and their smallest coordinates; null if there is no projection
+	 */
+	private final double[] px;
+	private final double[] py;
+	private final double minX;
+	private final double minY;
+
+	/**
+	 * height of rows and width of columns in degree, or in meter in a projection
+	 */
+	private final double cellLat;
+	private final double cellLng;
+	private final int numCols;
+
+	/**
+	 * smallest and largest row of points
+	 */
+	private final int minRow;
+	private final int maxRow;
+
+	/**
+	 * cosine of the largest absolute latitude of points
+	 */
+	private final double minCos;
+
+	/**
+	 * keys (row * numCols + col) of non-empty cells in ascending order; points of cell c are
+	 * cellPoints[cellStart[c]] .. cellPoints[cellStart[c + 1] - 1], in ascending index order
+	 */
+	private final long[] cellKeys;
+	private final int[] cellStart;
+	private final int[] cellPoints;
+
+	/**
+	 *
+	 * @param lat		latitude of each point
+	 * @param lng		longitude of each point
+	 * @param cellSize	minimum size of cells in meter, e.g. the radius of most queries
+	 */
+	public SpatialIndex(double[] lat, double[] lng, double cellSize) {
+		this(toPoints(lat, lng), cellSize);
+	}
+
+	/**
+	 *
+	 * @param points	points of the index; index of a point is its position in the array
+	 * @param cellSize	minimum size of cells in meter, e.g. the radius of most queries
+	 */
+	public SpatialIndex(PointObject[] points, double cellSize) {
+		this(points, cellSize, null);
+	}
+
+	/**
+	 *
+	 * @param points		points of the index; index of a point is its position in the array
+	 * @param cellSize		minimum size of cells in meter, e.g. the radius of most queries
+	 * @param projection	projection whose distance is used; null -> haversine distance
+	 */
+	public SpatialIndex(PointObject[] points, double cellSize, LocalProjection projection) {
+		if (!(cellSize > 0))
+			throw new IllegalArgumentException("size of cells must be positive: " + cellSize);
+		this.points = points;
+		this.projection = projection;
+		int n = points.length;
+
+		if (projection == null) {
+			px = null;
+			py = null;
+			minX = 0.0;
+			minY = 0.0;
+			double maxAbsLat = 0.0;
+			for (PointObject p : points)
+				maxAbsLat = Math.max(maxAbsLat, Math.abs(p.getLat()));
+			minCos = Math.max(0.0, Math.cos(Math.toRadians(Math.min(90.0, maxAbsLat))));
+
+			cellLat = latSpan(cellSize) * (1.0 + MARGIN);
+			// columns have the same width so that they wrap around exactly
+			double cols = Math.floor(360.0 / (lngSpan(cellSize) * (1.0 + MARGIN)));
+			numCols = cols >= 1.0 ? (int) Math.min(Integer.MAX_VALUE, cols) : 1;
+			cellLng = 360.0 / numCols;
+		} else {
+			px = projection.projectX(points);
+			py = projection.projectY(points);
+			double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE;
+			for (int i = 0; i < n; i++) {
+				x0 = Math.min(x0, px[i]);
+				x1 = Math.max(x1, px[i]);
+				y0 = Math.min(y0, py[i]);
+			}
+			minX = n == 0 ? 0.0 : x0;
+			minY = n == 0 ? 0.0 : y0;
+			minCos = 1.0;
+			cellLat = cellSize;
+			cellLng = cellSize;
+			// spare columns so that columns of points never wrap around onto each other within one cell
+			numCols = (int) Math.min(Integer.MAX_VALUE / 2, n == 0 ? 1 : Math.floor((x1 - x0) / cellSize) + 3);
+		}
+
+		long[] keys = new long[n];
+		int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			int r = row(i);
+			lo = Math.min(lo, r);
+			hi = Math.max(hi, r);
+			keys[i] = (long) r * numCols + col(i);
+		}
+		minRow = lo;
+		maxRow = hi;
+
+		// keys of non-empty cells
+		long[] sorted = keys.clone();
+		Arrays.sort(sorted);
+		int numCells = 0;
+		for (int i = 0; i < n; i++) {
+			if (i == 0 || sorted[i] != sorted[i - 1])
+				sorted[numCells++] = sorted[i];
+		}
+		cellKeys = Arrays.copyOf(sorted, numCells);
+
+		// counting sort of points by cell keeps ascending index order inside cells
+		int[] cellOf = new int[n];
+		cellStart = new int[numCells + 1];
+		for (int i = 0; i < n; i++) {
+			cellOf[i] = Arrays.binarySearch(cellKeys, keys[i]);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < numCells; c++)
+			cellStart[c + 1] += cellStart[c];
+		int[] fill = Arrays.copyOf(cellStart, numCells);
+		cellPoints = new int[n];
+		for (int i = 0; i < n; i++)
+			cellPoints[fill[cellOf[i]]++] = i;
+	}
+
+	public int size() {
+		return points.length;
+	}
+
+	/**
+	 *
+	 * @param i	index of point
+	 * @return
+	 */
+	public PointObject getPoint(int i) {
+		return points[i];
+	}
+
+	/**
+	 * other points whose distance to point i is less than radius
+	 * @param i			index of point
+	 * @param radius	in meter
+	 * @return			indices of points in ascending order
+	 */
+	public int[] withinRadius(int i, double radius) {
+		int rowSpan = rowSpan(radius);
+		int colSpan = colSpan(radius);
+		int row = row(i);
+		int col = col(i);
+		double limit = limit(radius);
+
+		int[] result = new int[16];
+		int size = 0;
+		for (int r = row - rowSpan; r <= row + rowSpan; r++) {
+			// each column is visited once even if the span wraps around
+			int first = 2 * colSpan + 1 >= numCols ? 0 : col - colSpan;
+			int last = 2 * colSpan + 1 >= numCols ? numCols - 1 : col + colSpan;
+			for (int c = first; c <= last; c++) {
+				int cell = Arrays.binarySearch(cellKeys, (long) r * numCols + Math.floorMod(c, numCols));
+				if (cell < 0)
+					continue;
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int j = cellPoints[k];
+					if (j == i)
+						continue;
+					if (distance(i, j) < limit) {
+						if (size == result.length)
+							result = Arrays.copyOf(result, 2 * size);
+						result[size++] = j;
+					}
+				}
+			}
+		}
+		result = Arrays.copyOf(result, size);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * the k nearest other points of point i whose distance is less than radius. Cells are visited in rings around the
+	 * cell of the point, ring r holding the cells whose row or column is r away, until no point outside the rings can
+	 * be nearer than the k-th one. Points at the same distance are taken in ascending index order
+	 * @param i			index of point
+	 * @param k			maximum number of points
+	 * @param radius	in meter; Double.POSITIVE_INFINITY -> no limit
+	 * @return			indices of points in ascending order
+	 */
+	public int[] nearest(int i, int k, double radius) {
+		int row = row(i);
+		int col = col(i);
+		double limit = limit(radius);
+
+		Candidates cand = new Candidates();
+		for (int r = 0; k > 0; r++) {
+			if ((long) (2 * r + 1) * (2 * r + 1) > cellKeys.length + 64) {
+				// rings hold more cells than the non-empty ones, e.g. for a point far from the others: scan all
+				cand = new Candidates();
+				for (long key : cellKeys)
+					scanCell(i, key, limit, cand);
+				break;
+			}
+			boolean isAllCols = 2 * r + 1 >= numCols;
+			for (int di = -r; di <= r; di++) {
+				long base = (long) (row + di) * numCols;
+				if (di == -r || di == r) {
+					// first and last rows of the ring: all columns within r
+					if (isAllCols) {
+						for (int c = 0; c < numCols; c++)
+							scanCell(i, base + c, limit, cand);
+					} else {
+						for (int dj = -r; dj <= r; dj++)
+							scanCell(i, base + Math.floorMod(col + dj, numCols), limit, cand);
+					}
+				} else if (2 * r <= numCols) {
+					// other rows: the columns r away, which are the same column if they meet on the other side
+					int c1 = Math.floorMod(col + r, numCols);
+					int c2 = Math.floorMod(col - r, numCols);
+					scanCell(i, base + c1, limit, cand);
+					if (c2 != c1)
+						scanCell(i, base + c2, limit, cand);
+				}
+			}
+
+			// points outside ring r are at least this far away
+			boolean isAllRows = row - r <= minRow && row + r >= maxRow;
+			if (isAllRows && isAllCols)
+				break;
+			double bound = Math.min(isAllRows ? Double.POSITIVE_INFINITY : rowBound(r),
+					isAllCols ? Double.POSITIVE_INFINITY : colBound(r)) / (1.0 + MARGIN);
+			if (bound >= radius)
+				break;
+			if (cand.size >= k && cand.kth(k) < limit(bound))
+				break;
+		}
+		return cand.nearest(k);
+	}
+
+	/**
+	 * distances to points of one cell
+	 * @param i			index of point
+	 * @param key		key of cell; cells out of the grid or empty are skipped
+	 * @param limit		only points nearer than this, see {@link #limit(double)}, are kept
+	 * @param cand
+	 */
+	private void scanCell(int i, long key, double limit, Candidates cand) {
+		int cell = Arrays.binarySearch(cellKeys, key);
+		if (cell < 0)
+			return;
+		for (int m = cellStart[cell]; m < cellStart[cell + 1]; m++) {
+			int j = cellPoints[m];
+			if (j == i)
+				continue;
+			double d = distance(i, j);
+			if (d < limit)
+				cand.add(j, d);
+		}
+	}
+
+	/**
+	 *
+	 * @param i
+	 * @param j
+	 * @return	haversine distance in meter, computed with the lower index first as in the brute-force loop; square
+	 * 			distance in the projection
+	 */
+	private double distance(int i, int j) {
+		if (projection != null) {
+			double dx = px[i] - px[j];
+			double dy = py[i] - py[j];
+			return dx * dx + dy * dy;
+		}
+		return i < j ? Distance.calculateDistance(points[i], points[j]) : Distance.calculateDistance(points[j], points[i]);
+	}
+
+	/**
+	 *
+	 * @param meters
+	 * @return	distance in the unit of {@link #distance(int, int)}
+	 */
+	private double limit(double meters) {
+		return projection == null ? meters : meters * meters;
+	}
+
+	/**
+	 *
+	 * @param radius	in meter
+	 * @return			number of rows on each side which hold all points within radius
+	 */
+	private int rowSpan(double radius) {
+		if (projection != null)
+			return (int) Math.min(Integer.MAX_VALUE / 4, Math.ceil(radius * (1.0 + MARGIN) / cellLat));
+		return (int) Math.min(Integer.MAX_VALUE / 4, Math.ceil(latSpan(radius) * (1.0 + MARGIN) / cellLat));
+	}
+
+	/**
+	 *
+	 * @param radius	in meter
+	 * @return			number of columns on each side which hold all points within radius
+	 */
+	private int colSpan(double radius) {
+		if (projection != null)
+			return (int) Math.min(numCols, Math.ceil(radius * (1.0 + MARGIN) / cellLng));
+		double lngSpan = lngSpan(radius);
+		return lngSpan >= 180.0 ? numCols : (int) Math.ceil(lngSpan * (1.0 + MARGIN) / cellLng);
+	}
+
+	/**
+	 *
+	 * @param r	number of rows
+	 * @return	lower bound in meter of the distance of two points whose rows are more than r apart
+	 */
+	private double rowBound(int r) {
+		return projection == null ? EARTH_RADIUS * Math.toRadians(r * cellLat) : r * cellLat;
+	}
+
+	/**
+	 *
+	 * @param r	number of columns
+	 * @return	lower bound in meter of the distance of two points whose columns are more than r apart
+	 */
+	private double colBound(int r) {
+		return projection == null ? minDistance(r * cellLng) : r * cellLng;
+	}
+
+	/**
+	 * points found by a nearest query and their distances
+	 */
+	private static class Candidates {
+		int[] idx = new int[16];
+		double[] dist = new double[16];
+		int size;
+
+		void add(int j, double d) {
+			if (size == idx.length) {
+				idx = Arrays.copyOf(idx, 2 * size);
+				dist = Arrays.copyOf(dist, 2 * size);
+			}
+			idx[size] = j;
+			dist[size++] = d;
+		}
+
+		/**
+		 *
+		 * @param k
+		 * @return	k-th smallest distance; size must be at least k
+		 */
+		double kth(int k) {
+			double[] sorted = Arrays.copyOf(dist, size);
+			Arrays.sort(sorted);
+			return sorted[k - 1];
+		}
+
+		/**
+		 *
+		 * @param k
+		 * @return	indices of the k nearest points, ties by index, in ascending order
+		 */
+		int[] nearest(int k) {
+			Integer[] order = new Integer[size];
+			for (int m = 0; m < size; m++)
+				order[m] = m;
+			Arrays.sort(order, (a, b) -> dist[a] != dist[b] ? Double.compare(dist[a], dist[b]) : Integer.compare(idx[a], idx[b]));
+			int[] result = new int[Math.min(k, size)];
+			for (int m = 0; m < result.length; m++)
+				result[m] = idx[order[m]];
+			Arrays.sort(result);
+			return result;
+		}
+	}
+
+	/**
+	 * neighbors of all points, computed on many threads
+	 * @param radius	in meter
+	 * @return			other points whose distance to each point is less than radius, in ascending order; null if there
+	 * 					is none, as the brute-force loop leaves it
+	 */
+	public int[][] allWithinRadius(double radius) {
+		int[][] result = new int[points.length][];
+		IntStream.range(0, points.length).parallel().forEach(i -> {
+			int[] n = withinRadius(i, radius);
+			result[i] = n.length == 0 ? null : n;
+		});
+		return result;
+	}
+
+	/**
+	 *
+	 * @param dLng	longitude difference in degree
+	 * @return		lower bound in meter of the distance of two points of the index with this longitude difference
+	 */
+	private double minDistance(double dLng) {
+		if (dLng >= 180.0)
+			return Double.POSITIVE_INFINITY;
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1.0, minCos * Math.sin(Math.toRadians(dLng) / 2)));
+	}
+
+	/**
+	 *
+	 * @param i	index of point
+	 * @return	row of point; rows do not wrap around
+	 */
+	private int row(int i) {
+		if (projection != null)
+			return (int) Math.floor((py[i] - minY) / cellLat);
+		return (int) Math.floor((points[i].getLat() + 90.0) / cellLat);
+	}
+
+	/**
+	 *
+	 * @param i	index of point
+	 * @return	column of point in [0, numCols)
+	 */
+	private int col(int i) {
+		if (projection != null)
+			return (int) Math.floor((px[i] - minX) / cellLng);
+		return (int) Math.floorMod((long) Math.floor((points[i].getLng() + 180.0) / cellLng), (long) numCols);
+	}
+
+	/**
+	 *
+	 * @param distance	in meter
+	 * @return			latitude difference in degree of two points at this distance
+	 */
+	private static double latSpan(double distance) {
+		return Math.toDegrees(distance / EARTH_RADIUS);
+	}
+
+	/**
+	 * largest longitude difference of two points of the index whose distance is less than the given one. By the
+	 * haversine formula, sin(d / 2R) >= sqrt(cos(lat1) cos(lat2)) sin(dLng / 2) >= minCos sin(dLng / 2)
+	 * @param distance	in meter
+	 * @return			in degree; 180 if any longitude difference is possible
+	 */
+	private double lngSpan(double distance) {
+		double s = Math.sin(Math.min(Math.PI / 2, distance / (2 * EARTH_RADIUS))) / minCos;
+		if (!(s < 1.0))
+			return 180.0;
+		return Math.toDegrees(2 * Math.asin(s));
+	}
+
+	private static PointObject[] toPoints(double[] lat, double[] lng) {
+		PointObject[] points = new PointObject[lat.length];
+		for (int i = 0; i < lat.length; i++)
+			points[i] = new PointObject(lat[i], lng[i]);
+		return points;
+	}
+}
@@ -12,6 +12,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 import org.object.AreaObject;
 import org.object.PointObject;
@@ -125,32 +126,18 @@ public class Utils {
 		ArrayList<String> venueIdsList = new ArrayList<>();
 		venueIdsList.addAll(allVenueIds);
 		
-		for (int i = 0; i < venueIdsList.size(); i++) {
-			String v1 = venueIdsList.get(i);
-			PointObject p1 = new PointObject(vInfo.get(v1)); // location of point i
-			for (int j = i + 1; j < venueIdsList.size(); j++) {
-				String v2 = venueIdsList.get(j);
-				PointObject p2 = new PointObject(vInfo.get(v2)); // location of point j
-				
-				double dist = Distance.calculateDistance(p1, p2);
-				
-				if (dist < threshold) {
-					// if distance is less than threshold, these two points are neighbors.
-					ArrayList<String> l1 = neighbors.get(v1);
-					if (l1 == null) {
-						l1 = new ArrayList<>();
-						neighbors.put(v1, l1);
-					}
-					l1.add(v2);
-					
-					ArrayList<String> l2 = neighbors.get(v2);
-					if(l2 == null) {
-						l2 = new ArrayList<>();
-						neighbors.put(v2, l2);
-					}
-					l2.add(v1);
-				}
-			}
+		// neighbors are found by radius queries over a grid instead of comparing all pairs of venues
+		PointObject[] points = new PointObject[venueIdsList.size()];
+		for (int i = 0; i < points.length; i++)
+			points[i] = new PointObject(vInfo.get(venueIdsList.get(i)));
+		int[][] nbrs = new SpatialIndex(points, threshold).allWithinRadius(threshold);
+		for (int i = 0; i < nbrs.length; i++) {
+			if (nbrs[i] == null)
+				continue;
+			ArrayList<String> l = new ArrayList<>(nbrs[i].length);
+			for (int j : nbrs[i])
+				l.add(venueIdsList.get(j));
+			neighbors.put(venueIdsList.get(i), l);
 		}
 		// finish building neighbor map
 		
@@ -189,6 +176,78 @@ public class Utils {
 	 */
 	public static HashMap<String, VenueObject> createNeighborsBox(HashMap<String, PointObject> vInfo, HashMap<String, AreaObject> areaMap, 
 			HashMap<String, Integer> countMap, HashMap<String, ArrayList<String>> userOfVenueMap, double scale, boolean isAverageLoc) {
+		return createNeighborsBox(vInfo, areaMap, countMap, userOfVenueMap, scale, isAverageLoc, null);
+	}
+	
+	/**
+	 * same as {@link #createNeighborsBox(HashMap, HashMap, HashMap, HashMap, double, boolean)} but neighbors of venues
+	 * are chosen by a policy, e.g. the k nearest venues, instead of all venues of the surrounding boxes. Areas are the
+	 * same boxes
+	 * @param vInfo
+	 * @param areaMap
+	 * @param countMap
+	 * @param userOfVenueMap
+	 * @param scale				size of the cell in degree
+	 * @param isAverageLoc		true -> location of area is the average locations of all venues in this area; false -> center of the square
+	 * @param policy			neighbors of venues; null -> venues in the same and the surrounding boxes
+	 * @return
+	 */
+	public static HashMap<String, VenueObject> createNeighborsBox(HashMap<String, PointObject> vInfo, HashMap<String, AreaObject> areaMap, 
+			HashMap<String, Integer> countMap, HashMap<String, ArrayList<String>> userOfVenueMap, double scale, boolean isAverageLoc,
+			NeighborPolicy policy) {
+		return createNeighborsBox(vInfo, areaMap, countMap, userOfVenueMap, scale, isAverageLoc, policy, false);
+	}
+	
+	/**
+	 * same as {@link #createNeighborsBox(HashMap, HashMap, HashMap, HashMap, double, boolean)} but cells, neighbors,
+	 * venues and areas are computed on many threads. Venue map and area map are identical to the ones of the
+	 * sequential version, including the order in which they are filled
+	 * @param vInfo
+	 * @param areaMap
+	 * @param countMap
+	 * @param userOfVenueMap
+	 * @param scale				size of the cell in degree
+	 * @param isAverageLoc		true -> location of area is the average locations of all venues in this area; false -> center of the square
+	 * @return
+	 */
+	public static HashMap<String, VenueObject> createNeighborsBoxParallel(HashMap<String, PointObject> vInfo, HashMap<String, AreaObject> areaMap, 
+			HashMap<String, Integer> countMap, HashMap<String, ArrayList<String>> userOfVenueMap, double scale, boolean isAverageLoc) {
+		return createNeighborsBox(vInfo, areaMap, countMap, userOfVenueMap, scale, isAverageLoc, null, true);
+	}
+	
+	/**
+	 * parallel version of {@link #createNeighborsBox(HashMap, HashMap, HashMap, HashMap, double, boolean, NeighborPolicy)}
+	 * @param vInfo
+	 * @param areaMap
+	 * @param countMap
+	 * @param userOfVenueMap
+	 * @param scale				size of the cell in degree
+	 * @param isAverageLoc		true -> location of area is the average locations of all venues in this area; false -> center of the square
+	 * @param policy			neighbors of venues; null -> venues in the same and the surrounding boxes
+	 * @return
+	 */
+	public static HashMap<String, VenueObject> createNeighborsBoxParallel(HashMap<String, PointObject> vInfo, HashMap<String, AreaObject> areaMap, 
+			HashMap<String, Integer> countMap, HashMap<String, ArrayList<String>> userOfVenueMap, double scale, boolean isAverageLoc,
+			NeighborPolicy policy) {
+		return createNeighborsBox(vInfo, areaMap, countMap, userOfVenueMap, scale, isAverageLoc, policy, true);
+	}
+	
+	/**
+	 * 
+	 * @param vInfo
+	 * @param areaMap
+	 * @param countMap
+	 * @param userOfVenueMap
+	 * @param scale				size of the cell in degree
+	 * @param isAverageLoc		true -> location of area is the average locations of all venues in this area; false -> center of the square
+	 * @param policy			neighbors of venues; null -> venues in the same and the surrounding boxes
+	 * @param parallel			true -> cells are processed on many threads. Objects of each cell are built in the same
+	 * 							order either way and maps are filled on one thread, so the result does not depend on it
+	 * @return
+	 */
+	private static HashMap<String, VenueObject> createNeighborsBox(HashMap<String, PointObject> vInfo, HashMap<String, AreaObject> areaMap, 
+			HashMap<String, Integer> countMap, HashMap<String, ArrayList<String>> userOfVenueMap, double scale, boolean isAverageLoc,
+			NeighborPolicy policy, boolean parallel) {
 		Collection<PointObject> locInfo = vInfo.values();
 		
 		// find venues inside area
@@ -202,32 +261,23 @@ public class Utils {
 		double base_min_lat = sw.getLat();
 		double base_min_lng = sw.getLng();
 
-		int numLat = (int) Math.round(ne.getLat() / scale - sw.getLat() / scale);
-		int numLng = (int) Math.round(ne.getLng() / scale - sw.getLng() / scale);
-		
-		// I know it is not a good way to handle this case but maybe it works
-		// key is area id; value is set of venue id which is belong to this area
-		HashMap<String, Set<String>> venuesInArea = new HashMap<>();
-		
-		for (String vId : vInfo.keySet()) {
-			PointObject loc = vInfo.get(vId);
-			
-			// cell id of this venue
-			int i = (int) Math.floor((loc.getLat() - base_min_lat) / scale);
-			int j = (int) Math.floor((loc.getLng() - base_min_lng) / scale);
-			
-			// area id of venue. Each venue is belong to only 1 area.
-			String areaIds = String.valueOf(i * numLng  + j );
-//			System.out.println("venueId:" + vId + "\ti:" + i + "\tj:" + j + "\tareaId:" + areaIds);
-			
-			Set<String> listOfVenues = venuesInArea.get(areaIds);
-			if (listOfVenues == null) {
-				listOfVenues = new HashSet<>();
-				venuesInArea.put(areaIds, listOfVenues);
-			}
-			listOfVenues.add(vId);
-		}
+		int numLat = Math.max(1, (int) Math.round(ne.getLat() / scale - sw.getLat() / scale));
+		int numLng = Math.max(1, (int) Math.round(ne.getLng() / scale - sw.getLng() / scale));
 		
+		// cell of each venue. Each venue is belong to only 1 area; area id is the key of its cell.
+		// Venues on the border of the cover rectangle are put in the last row or column
+		String[] venueIds = vInfo.keySet().toArray(new String[vInfo.size()]);
+		PointObject[] locations = new PointObject[venueIds.length];
+		int[] rows = new int[venueIds.length];
+		int[] cols = new int[venueIds.length];
+		range(venueIds.length, parallel).forEach(v -> {
+			PointObject loc = vInfo.get(venueIds[v]);
+			locations[v] = loc;
+			rows[v] = Math.min(numLat - 1, Math.max(0, (int) Math.floor((loc.getLat() - base_min_lat) / scale)));
+			cols[v] = Math.min(numLng - 1, Math.max(0, (int) Math.floor((loc.getLng() - base_min_lng) / scale)));
+		});
+		GridCells cells = new GridCells(rows, cols, numLat, numLng, parallel);
+		int[][] policyNeighbors = policy == null ? null : policy.neighbors(locations);
 		
 		// neighbors of a venue in this case are not only venues in the same box (area) with this venue but also 
 		// venues in surrounding boxes of box of this venue. For example, neighbors of venue in box 5 also contain
@@ -235,101 +285,121 @@ public class Utils {
 		// | 1 | 2 | 3 |
 		// | 4 | 5 | 6 |
 		// | 7 | 8 | 9 |
-		HashMap<String, ArrayList<String>> neighbors = new HashMap<>();
-		HashMap<String, String> areaIdOfVenue = new HashMap<>();
-		for (int i = 0; i < numLat; i++ ) {
-			for (int j = 0; j < numLng; j++) {
-				String areaId = String.valueOf(i * numLng + j);
-								
-				Set<String> setOfVenues = venuesInArea.get(areaId);
-				if (setOfVenues != null) { // if there are no venues in this area, we dont care
-					for (String vId : setOfVenues) {
-						// assign area id to venue
-						areaIdOfVenue.put(vId, areaId);
-						
-						ArrayList<String> subneighbors = new ArrayList<>(setOfVenues);
-						subneighbors.remove(vId);
-						neighbors.put(vId, subneighbors);
-						
-						// list of surrounding areas
-						ArrayList<String> ns = Utils.getNeighborArea(i, j, numLat, numLng);
-						for (String n : ns) {
-							// add all venues in surrounding areas as neighbors of venue
-							Set<String> nes = venuesInArea.get(n);
-							if (nes != null)
-								subneighbors.addAll(nes);
-						}
-					}
+		VenueObject[] venues = new VenueObject[venueIds.length];
+		range(cells.getNumCells(), parallel).forEach(c -> {
+			int i = cells.getRow(c);
+			int j = cells.getCol(c);
+			String areaId = String.valueOf(cells.getKey(c));
+			
+			// surrounding non-empty cells, found once for all venues of the cell
+			int[] around = new int[GridCells.DI.length];
+			int numAround = 0;
+			int size = cells.end(c) - cells.start(c) - 1;
+			for (int d = 0; d < GridCells.DI.length; d++) {
+				int n = cells.cellAt(i + GridCells.DI[d], j + GridCells.DJ[d]);
+				if (n >= 0) {
+					around[numAround++] = n;
+					size += cells.end(n) - cells.start(n);
 				}
 			}
-		}
-		
-		// create venue map
-		HashMap<String, VenueObject> venueMap = new HashMap<>();
-		for (String venueId: vInfo.keySet()){
-			PointObject location = vInfo.get(venueId);
-			
-			ArrayList<String> neighborIds = neighbors.get(venueId);
-
-			Integer numCks = countMap.get(venueId);
-			if (numCks == null)
-				numCks = 0;
-			
-			ArrayList<String> listOfUsers = userOfVenueMap.get(venueId);
 			
-			VenueObject vo = new VenueObject(venueId, numCks, location, neighborIds, listOfUsers);
-			
-			String areaId = areaIdOfVenue.get(venueId);
-			
-			vo.setAreaId(areaId);
-			
-			venueMap.put(venueId, vo);
-		}
-		
-		// create area
-		for (int i = 0; i < numLat; i++) {
-			for (int j = 0; j < numLng; j++) {
-				String areaId = String.valueOf(i * numLng + j);
+			for (int k = cells.start(c); k < cells.end(c); k++) {
+				int v = cells.point(k);
+				ArrayList<String> neighborIds;
+				if (policy != null) {
+					int[] ns = policyNeighbors[v];
+					neighborIds = new ArrayList<>(ns == null ? 0 : ns.length);
+					if (ns != null)
+						for (int n : ns)
+							neighborIds.add(venueIds[n]);
+				} else {
+					neighborIds = new ArrayList<>(size);
+					for (int m = cells.start(c); m < cells.end(c); m++) {
+						if (m != k)
+							neighborIds.add(venueIds[cells.point(m)]);
+					}
+					for (int a = 0; a < numAround; a++) {
+						// add all venues in surrounding areas as neighbors of venue
+						for (int m = cells.start(around[a]); m < cells.end(around[a]); m++)
+							neighborIds.add(venueIds[cells.point(m)]);
+					}
+				}
 				
-				// calculate the scope value of area
-				double scope = 0.0;
-				Set<String> allVenueIds = venuesInArea.get(areaId);
-				if (allVenueIds == null) // if there is no venue in this area, ignore
-					continue;
+				Integer numCks = countMap.get(venueIds[v]);
+				if (numCks == null)
+					numCks = 0;
 				
-				double average_lat = 0.0;
-				double average_lng = 0.0;
+				ArrayList<String> listOfUsers = userOfVenueMap.get(venueIds[v]);
 				
-				for (String vId : allVenueIds) {
-					VenueObject v = venueMap.get(vId);
-					double s = v.getInfluenceScope();
-					scope += s * s;
-					
-					average_lat += v.getLocation().getLat();
-					average_lng += v.getLocation().getLng();
-				}
-				scope /= (double) allVenueIds.size();
-				average_lat /= (double) allVenueIds.size();
-				average_lng /= (double) allVenueIds.size();
+				VenueObject vo = new VenueObject(venueIds[v], numCks, locations[v], neighborIds, listOfUsers);
+				vo.setAreaId(areaId);
+				venues[v] = vo;
+			}
+		});
+		
+		// create area
+		AreaObject[] areas = new AreaObject[cells.getNumCells()];
+		range(cells.getNumCells(), parallel).forEach(c -> {
+			int i = cells.getRow(c);
+			int j = cells.getCol(c);
+			String areaId = String.valueOf(cells.getKey(c));
+			int numVenues = cells.end(c) - cells.start(c);
+			
+			// calculate the scope value of area
+			double scope = 0.0;
+			double average_lat = 0.0;
+			double average_lng = 0.0;
+			Set<String> allVenueIds = new HashSet<>();
+			
+			for (int k = cells.start(c); k < cells.end(c); k++) {
+				int v = cells.point(k);
+				double s = venues[v].getInfluenceScope();
+				scope += s * s;
 				
-				// location of area
-				PointObject aLoc = null;
-				if (isAverageLoc) {
-					aLoc = new PointObject(average_lat, average_lng);
-				} else {
-					PointObject sub_ne = new PointObject(base_min_lat + (scale * (double)(i + 1)), base_min_lng + (scale * (double) (j + 1)));
-					PointObject sub_sw = new PointObject(base_min_lat + (scale * (double)(i)), base_min_lng + (scale * (double) (j)));
-					RectangleObject rObj = new RectangleObject(sub_ne, sub_sw);
-					aLoc = rObj.getCenter();
-				}
-
-				AreaObject area = new AreaObject(areaId, Math.sqrt(scope), aLoc, allVenueIds);
-				areaMap.put(areaId, area);
+				average_lat += locations[v].getLat();
+				average_lng += locations[v].getLng();
+				allVenueIds.add(venueIds[v]);
+			}
+			scope /= (double) numVenues;
+			average_lat /= (double) numVenues;
+			average_lng /= (double) numVenues;
+			
+			// location of area
+			PointObject aLoc = null;
+			if (isAverageLoc) {
+				aLoc = new PointObject(average_lat, average_lng);
+			} else {
+				PointObject sub_ne = new PointObject(base_min_lat + (scale * (double)(i + 1)), base_min_lng + (scale * (double) (j + 1)));
+				PointObject sub_sw = new PointObject(base_min_lat + (scale * (double)(i)), base_min_lng + (scale * (double) (j)));
+				RectangleObject rObj = new RectangleObject(sub_ne, sub_sw);
+				aLoc = rObj.getCenter();
 			}
+
+			areas[c] = new AreaObject(areaId, Math.sqrt(scope), aLoc, allVenueIds);
+		});
+		
+		// maps are filled in the order of cells and of venues inside cells
+		HashMap<String, VenueObject> venueMap = new HashMap<>();
+		for (int k = 0; k < venueIds.length; k++) {
+			int v = cells.point(k);
+			venueMap.put(venueIds[v], venues[v]);
 		}
+		for (AreaObject area : areas)
+			areaMap.put(area.getId(), area);
 		
 		return venueMap;
 	}
+	
+	/**
+	 * 
+	 * @param n
+	 * @param parallel
+	 * @return	0 .. n - 1, as a parallel stream if parallel is true
+	 */
+	private static IntStream range(int n, boolean parallel) {
+		IntStream s = IntStream.range(0, n);
+		return parallel ? s.parallel() : s;
+	}
 
 	public static ArrayList<String> getNeighborArea(int i, int j, int numLat, int numLng) {
 		ArrayList<String> result = new ArrayList<>();